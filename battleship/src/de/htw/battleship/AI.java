@@ -1,15 +1,47 @@
 package de.htw.battleship;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntPredicate;
 
 /**
  * An instance of this class can generate shots for the villain (computer) to
- * play, using 5 algorithms with different difficulties.
+ * play, using 6 algorithms with different difficulties.
  * @author Michael Draga
  * @version 1.0
  */
 public class AI {
+    /**
+     * The largest number of placement combinations the endgame solver may search
+     */
+    public static final long ENDGAME_MAX_SEARCH_SPACE = 200_000;
+    /**
+     * The time in nanoseconds one move may take if no deadline is given
+     */
+    public static final long DEFAULT_MOVE_BUDGET_NANOS = 50_000_000L;
+    /**
+     * The number of random fields tried before the fields are searched in order
+     */
+    private static final int RANDOM_ATTEMPTS = 32;
+    /**
+     * The four directions next to a field: up, left, down, right
+     */
+    private static final Vector2d[] DIRECTIONS = {
+            new Vector2d(0, -1), new Vector2d(-1, 0), new Vector2d(0, 1), new Vector2d(1, 0)
+    };
+
+    /**
+     * Solved endgame positions, shared by all AIs (e.g. in simulations that
+     * play the same boards over and over again). The key is the visible
+     * hash of the board mixed with the board size and the remaining ships
+     * (see endgameKey), so a position is found again on any board that
+     * shows the same shots, wherever its ships are, but never on a board of
+     * another configuration.
+     */
+    private static final TranspositionTable<Vector2d> endgameMoves = new TranspositionTable<Vector2d>(1 << 16);
+
     private final ArrayList<Vector2d> lastMoves = new ArrayList<Vector2d>();
     private final ArrayList<Vector2d> testedDifferences = new ArrayList<Vector2d>();
     private int level;
@@ -17,6 +49,14 @@ public class AI {
 
     private Boolean horizontal;
     private int direction;
+    /**
+     * Whether the opening book of the level may still know the position, and
+     * whether it has answered a move of the current game
+     */
+    private boolean followingBook = true;
+    private boolean usedBook = false;
+
+    private final EndgameSolver endgameSolver = new EndgameSolver(ENDGAME_MAX_SEARCH_SPACE, DEFAULT_MOVE_BUDGET_NANOS);
 
     /**
      * Constructor of the class
@@ -30,11 +70,25 @@ public class AI {
 
     /**
      * Determines the algorithm used for the AI's next move based on the
-     * difficulty level
+     * difficulty level, with the default time budget
      * @return The move returned from the executed algorithm
      */
     public Vector2d nextMove() {
-        Vector2d nextMove;
+        return nextMove(System.nanoTime() + DEFAULT_MOVE_BUDGET_NANOS);
+    }
+
+    /**
+     * Determines the algorithm used for the AI's next move based on the
+     * difficulty level. Every algorithm returns by the deadline: the simple
+     * ones take a bounded number of steps, the searching ones return the
+     * best move found so far or fall back to a simple algorithm.
+     * @param deadline The System.nanoTime() value by which the move must be chosen
+     * @return The move returned from the executed algorithm
+     */
+    public Vector2d nextMove(long deadline) {
+        Vector2d nextMove = openingMove();
+        if (nextMove != null)
+            return nextMove;
         switch (this.level) {
             case 0:
                 nextMove = level0Algorithm();
@@ -51,6 +105,9 @@ public class AI {
             case 4:
                 nextMove = level4Algorithm();
                 break;
+            case 5:
+                nextMove = level5Algorithm(deadline);
+                break;
             default:
                 nextMove = new Vector2d();
                 break;
@@ -58,22 +115,74 @@ public class AI {
         return nextMove;
     }
 
+    /**
+     * Chooses all shots of a salvo at once (see Board.shootSalvo). The
+     * results of the shots are only known after the whole salvo, so the
+     * advanced and the strongest level do not chase a ship shot by shot:
+     * the placements are counted once, the fields next to open hits are
+     * taken first and the rest of the salvo goes to the fields most
+     * placements cover. The other levels choose their fields as usual.
+     * No level follows the opening book, it only knows single shots.
+     * @param count The number of shots
+     * @return The different positions of the shots, fewer if fewer fields are left
+     */
+    public Vector2d[] nextSalvo(int count) {
+        int size = playerBoard.getSize();
+        int[] fields;
+        this.followingBook = false;
+        if (level == 3 || level == 5) {
+            this.loseMemory();
+            fields = PlacementDensity.densestFields(playerBoard, playerBoard.adjacent(playerBoard.openHitCells()), count);
+        } else {
+            BitMask chosen = new BitMask(size * size);
+            fields = new int[count];
+            int n = 0;
+            // The simple levels may choose a field twice, a few more moves make up for that
+            for (int attempt = 0; attempt < count * RANDOM_ATTEMPTS && n < count; attempt++) {
+                Vector2d move = nextMove();
+                int field = move.y * size + move.x;
+                if (!chosen.get(field)) {
+                    chosen.set(field);
+                    fields[n++] = field;
+                }
+            }
+            fields = Arrays.copyOf(fields, n);
+        }
+        Vector2d[] salvo = new Vector2d[fields.length];
+        for (int i = 0; i < fields.length; i++)
+            salvo[i] = new Vector2d(fields[i] % size, fields[i] / size);
+        return salvo;
+    }
+
+    /**
+     * Looks up the move in the opening book of the level (see OpeningBook).
+     * As soon as the book does not know a position the AI plays live for
+     * the rest of the game, continuing at the hits the book has made.
+     * @return The move of the book or null if the move has to be computed
+     */
+    private Vector2d openingMove() {
+        if (!followingBook)
+            return null;
+        OpeningBook book = OpeningBook.forLevel(level);
+        Vector2d move = book == null ? null : book.lookup(playerBoard);
+        if (move == null) {
+            this.followingBook = false;
+            if (usedBook)
+                this.continueAtUnresolvedHit();
+            return null;
+        }
+        this.usedBook = true;
+        return move;
+    }
+
     /**
      * Algorithm for AI testing difficulty.
      * Designed to not hit any ships, cannot win.
      * @return The position to play in the next move
      */
     private Vector2d level0Algorithm() {
-        int x;
-        int y;
-
         // Strategy to aim a shot: Pick a random field that is empty
-        do {
-            x = new Random().nextInt(Board.BOARD_SIZE);
-            y = new Random().nextInt(Board.BOARD_SIZE);
-        } while (playerBoard.getField(x, y) != Board.EMPTY && playerBoard.getField(x, y) != Board.MISSED_SHOT);
-
-        return new Vector2d(x, y);
+        return randomField(field -> field == Board.EMPTY || field == Board.MISSED_SHOT);
     }
 
     /**
@@ -82,8 +191,8 @@ public class AI {
      * @return The position to play in the next move
      */
     private Vector2d level1Algorithm() {
-        Random r = new Random();
-        return new Vector2d(r.nextInt(Board.BOARD_SIZE), r.nextInt(Board.BOARD_SIZE));
+        Random r = ThreadLocalRandom.current();
+        return new Vector2d(r.nextInt(playerBoard.getSize()), r.nextInt(playerBoard.getSize()));
     }
 
     /**
@@ -93,13 +202,7 @@ public class AI {
      * @return The position to play in the next move
      */
     private Vector2d level2Algorithm() {
-        Random r = new Random();
-        int x, y;
-        do {
-            x = r.nextInt(Board.BOARD_SIZE);
-            y = r.nextInt(Board.BOARD_SIZE);
-        } while (playerBoard.getField(x, y) == Board.HIT || playerBoard.getField(x, y) == Board.MISSED_SHOT);
-        return new Vector2d(x, y);
+        return randomField(field -> field != Board.HIT && field != Board.MISSED_SHOT);
     }
 
     /**
@@ -114,36 +217,33 @@ public class AI {
      */
     private Vector2d level3Algorithm() {
         if (lastMoves.isEmpty()) {
-            Random r = new Random();
-            int x, y;
-            do {
-                x = r.nextInt(Board.BOARD_SIZE);
-                y = r.nextInt(Board.BOARD_SIZE);
-            } while (this.playerBoard.getField(x, y) == Board.HIT || this.playerBoard.getField(x, y) == Board.MISSED_SHOT);
-            if (this.playerBoard.getField(x, y) == Board.SHIP)
-                lastMoves.add(new Vector2d(x, y));
-            return new Vector2d(x, y);
+            Vector2d move = randomField(field -> field != Board.HIT && field != Board.MISSED_SHOT);
+            if (this.playerBoard.getField(move.x, move.y) == Board.SHIP)
+                lastMoves.add(new Vector2d(move.x, move.y));
+            return move;
         }
         if (horizontal == null) {
-            Random r = new Random();
             Vector2d position = lastMoves.get(0);
-            int direction, dx, dy, difference;
-            do {
-                if (this.testedDifferences.size() % 2 == 1) {
-                    Vector2d differences = this.testedDifferences.get(this.testedDifferences.size() - 1);
-                    dx = differences.x;
-                    dy = differences.y;
-                } else {
-                    direction = r.nextInt(4);
-                    difference = direction - 2;
-                    dx = difference % 2;
-                    dy = (difference + 1) % 2;
-                }
-                if (collidesWithBorder(position.x + dx) ||
-                        collidesWithBorder(position.y + dy) ||
-                        this.playerBoard.getField(position.x + dx, position.y + dy) == Board.MISSED_SHOT)
-                    this.testedDifferences.add(new Vector2d(dx, dy));
-            } while (listContainsArray(this.testedDifferences, new Vector2d(dx, dy)));
+            // Choose one of the directions that have not been tested yet, instead of guessing until one is found
+            ArrayList<Vector2d> candidates = new ArrayList<Vector2d>(DIRECTIONS.length);
+            for (Vector2d difference : DIRECTIONS) {
+                if (listContainsArray(this.testedDifferences, difference))
+                    continue;
+                if (collidesWithBorder(position.x + difference.x) ||
+                        collidesWithBorder(position.y + difference.y) ||
+                        hitsAgain(new Vector2d(position.x + difference.x, position.y + difference.y)))
+                    this.testedDifferences.add(new Vector2d(difference.x, difference.y));
+                else
+                    candidates.add(difference);
+            }
+            if (candidates.isEmpty()) {
+                // Nothing left around the hit: continue at another hit of a bent ship or start over
+                this.continueAtUnresolvedHit();
+                return level3Algorithm();
+            }
+            Vector2d difference = candidates.get(ThreadLocalRandom.current().nextInt(candidates.size()));
+            int dx = difference.x;
+            int dy = difference.y;
             this.testedDifferences.add(new Vector2d(dx, dy));
             Vector2d move = new Vector2d(position.x + dx,
                     position.y + dy);
@@ -161,6 +261,13 @@ public class AI {
                 hitsAgain(move)) {
             this.resetAndTurnAround();
             move = advance(this.lastMoves.get(lastMoves.size() - 1));
+            if (collidesWithBorder(move.x) ||
+                    collidesWithBorder(move.y) ||
+                    hitsAgain(move)) {
+                // Both ends of the line are reached but the ship is not sunk, so it is bent
+                this.continueAtUnresolvedHit();
+                return level3Algorithm();
+            }
             this.lastMoves.add(move);
             return move;
         }
@@ -180,13 +287,110 @@ public class AI {
      * @return The position to play in the next move
      */
     private Vector2d level4Algorithm() {
-        Random r = new Random();
-        int x, y;
-        do {
-            x = r.nextInt(Board.BOARD_SIZE);
-            y = r.nextInt(Board.BOARD_SIZE);
-        } while (playerBoard.getField(x,y) != Board.SHIP);
-        return new Vector2d(x,y);
+        return randomField(field -> field == Board.SHIP);
+    }
+
+    /**
+     * Algorithm for the strongest fair AI difficulty.
+     * Searches ships on the fields most placements cover and sinks them
+     * like the advanced algorithm until only a few ships are left and
+     * the number of possible placements is small enough. From then on the
+     * endgame solver computes every shot exactly from the visible board.
+     * If the solver runs out of time it returns its best shot so far or
+     * the advanced algorithm is used for this move.
+     * @param deadline The System.nanoTime() value by which the move must be chosen
+     * @return The position to play in the next move
+     */
+    private Vector2d level5Algorithm(long deadline) {
+        // The solver only sees the shots, so every board behind the same shots shares its move
+        long hash = endgameKey();
+        Vector2d move = endgameMoves.get(hash);
+        if (move == null) {
+            move = endgameSolver.solve(playerBoard, deadline);
+            if (move == null)
+                return lastMoves.isEmpty() ? densestField() : level3Algorithm();
+            // Only complete answers are shared, a hurried one might be worse than necessary
+            if (!endgameSolver.wasInterrupted())
+                endgameMoves.put(hash, move);
+        }
+        // The advanced algorithm's memory is outdated once the solver took over
+        this.loseMemory();
+        return new Vector2d(move.x, move.y);
+    }
+
+    /**
+     * Calculates the key of the current position in endgameMoves: the
+     * visible hash of the board, mixed with the board size and the shapes
+     * of the remaining ships. Without them an empty board would have the
+     * key 0 in every configuration.
+     * @return The key of the position
+     */
+    private long endgameKey() {
+        // Added up, so the order of the ships does not matter
+        long fleet = 0;
+        for (ShipShape shape : playerBoard.getRemainingShipShapes())
+            fleet += mix(shape.hashCode());
+        return playerBoard.getVisibleHash() ^ mix(fleet + mix(playerBoard.getSize()));
+    }
+
+    /**
+     * Scrambles a number with the SplitMix64 finalizer
+     * @param z The number
+     * @return The scrambled number
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Shoots at the field that the most placements of the remaining ships
+     * cover (see PlacementDensity) and remembers it if it hits a ship, so
+     * the advanced algorithm chases the ship from there
+     * @return The position to play in the next move
+     */
+    private Vector2d densestField() {
+        Vector2d move = PlacementDensity.densestField(playerBoard);
+        if (hitsShip(move))
+            this.lastMoves.add(new Vector2d(move.x, move.y));
+        return move;
+    }
+
+    /**
+     * Picks a random field whose value is accepted by the filter. A few
+     * random fields are tried first; if none fits, the accepted fields are
+     * counted and one of them is chosen, so the time needed is bounded even
+     * if almost no field fits.
+     * @param filter Accepts the values of the fields that may be chosen
+     * @return A random accepted field or any random field if no field is accepted
+     */
+    private Vector2d randomField(IntPredicate filter) {
+        Random r = ThreadLocalRandom.current();
+        int size = playerBoard.getSize();
+        for (int i = 0; i < RANDOM_ATTEMPTS; i++) {
+            int x = r.nextInt(size);
+            int y = r.nextInt(size);
+            if (filter.test(playerBoard.getField(x, y)))
+                return new Vector2d(x, y);
+        }
+        int accepted = 0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                if (filter.test(playerBoard.getField(x, y)))
+                    accepted++;
+            }
+        }
+        if (accepted == 0)
+            return new Vector2d(r.nextInt(size), r.nextInt(size));
+        int chosen = r.nextInt(accepted);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                if (filter.test(playerBoard.getField(x, y)) && chosen-- == 0)
+                    return new Vector2d(x, y);
+            }
+        }
+        return new Vector2d(r.nextInt(size), r.nextInt(size));
     }
 
     /**
@@ -221,8 +425,8 @@ public class AI {
      * @param point The point being checked
      * @return Whether the point lies outside of the borders of the board
      */
-    private static boolean collidesWithBorder(int point) {
-        return point < 0 || point >= Board.BOARD_SIZE;
+    private boolean collidesWithBorder(int point) {
+        return point < 0 || point >= playerBoard.getSize();
     }
 
     /**
@@ -254,6 +458,29 @@ public class AI {
         return this.playerBoard.getField(move.x, move.y) == Board.EMPTY;
     }
 
+    /**
+     * Forgets the current line and continues the search at a hit field of a
+     * ship that is not sunk yet and still has a neighbour that has not been
+     * shot at. Without such a field the AI starts over with random shots.
+     */
+    private void continueAtUnresolvedHit() {
+        this.loseMemory();
+        int size = playerBoard.getSize();
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                if (playerBoard.getField(x, y) != Board.HIT || playerBoard.isPartOfSunkShip(x, y))
+                    continue;
+                for (Vector2d difference : DIRECTIONS) {
+                    Vector2d neighbour = new Vector2d(x + difference.x, y + difference.y);
+                    if (!collidesWithBorder(neighbour.x) && !collidesWithBorder(neighbour.y) && !hitsAgain(neighbour)) {
+                        this.lastMoves.add(new Vector2d(x, y));
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Reverses the current direction and goes back to the starting point
      * of the current ship to keep shooting in the other direction
@@ -276,6 +503,72 @@ public class AI {
         this.lastMoves.clear();
     }
 
+    /**
+     * Exports what the AI remembers about the ship it is currently
+     * attacking, so a saved game continues exactly where it stopped.
+     * Format: "lastMoves;testedDifferences;horizontal;direction" with the
+     * vectors as "x,y" separated by spaces
+     * @return The memory of the AI as a single line
+     */
+    public String exportMemory() {
+        return vectorsToString(lastMoves) + ";" + vectorsToString(testedDifferences) + ";" +
+                horizontal + ";" + direction;
+    }
+
+    /**
+     * Restores the memory exported by exportMemory
+     * @param memory The exported memory
+     */
+    public void importMemory(String memory) {
+        this.loseMemory();
+        String[] parts = memory.split(";", -1);
+        if (parts.length != 4)
+            throw new IllegalArgumentException("Invalid AI memory: " + memory);
+        stringToVectors(parts[0], lastMoves);
+        stringToVectors(parts[1], testedDifferences);
+        this.horizontal = parts[2].equals("null") ? null : Boolean.valueOf(parts[2]);
+        this.direction = Integer.parseInt(parts[3]);
+    }
+
+    /**
+     * Converts a list of vectors into a string of "x,y" pairs separated by spaces
+     * @param vectors The vectors being converted
+     * @return The string representation of the vectors
+     */
+    private static String vectorsToString(ArrayList<Vector2d> vectors) {
+        StringBuilder builder = new StringBuilder();
+        for (Vector2d vector : vectors) {
+            if (builder.length() > 0)
+                builder.append(' ');
+            builder.append(vector.x).append(',').append(vector.y);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Adds the vectors of a string created by vectorsToString to a list
+     * @param string The string representation of the vectors
+     * @param vectors The list the vectors are added to
+     */
+    private static void stringToVectors(String string, ArrayList<Vector2d> vectors) {
+        if (string.isEmpty())
+            return;
+        for (String vector : string.split(" ")) {
+            String[] values = vector.split(",");
+            vectors.add(new Vector2d(Integer.parseInt(values[0]), Integer.parseInt(values[1])));
+        }
+    }
+
+    /**
+     * Prepares the AI for a new game on its (reset) board. Extends loseMemory,
+     * so an AI object can be reused for any number of games.
+     */
+    public void reset() {
+        this.loseMemory();
+        this.followingBook = true;
+        this.usedBook = false;
+    }
+
     /**
      * Getter for the level attribute
      * @return The value of the level attribute (the AIs difficulty level)
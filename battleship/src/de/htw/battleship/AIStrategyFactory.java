@@ -0,0 +1,60 @@
+package de.htw.battleship;
+
+/**
+ * Creates strategies that play like the villain AI of a given level.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class AIStrategyFactory implements StrategyFactory {
+    private final int level;
+
+    /**
+     * Constructor of the class
+     * @param level The difficulty level of the AI
+     */
+    public AIStrategyFactory(int level) {
+        this.level = level;
+    }
+
+    /**
+     * Gets the name of the strategy
+     * @return The name of the strategy, e.g. "AI 3"
+     */
+    @Override
+    public String getName() {
+        return "AI " + level;
+    }
+
+    /**
+     * Creates a new AI of the level of this factory
+     * @param opponentBoard The board the AI shoots at
+     * @return A strategy backed by a new AI, it can be reset for the next game
+     */
+    @Override
+    public Strategy create(Board opponentBoard) {
+        AI ai = new AI(level, opponentBoard);
+        return new ResettableStrategy() {
+            @Override
+            public Vector2d nextMove() {
+                return ai.nextMove();
+            }
+
+            @Override
+            public Vector2d nextMove(long deadline) {
+                return ai.nextMove(deadline);
+            }
+
+            @Override
+            public void shotResult(Vector2d shot, int result) {
+                // Same as in BattleshipGame.fireVillainShot
+                if (result == 2)
+                    ai.loseMemory();
+            }
+
+            @Override
+            public void reset() {
+                ai.reset();
+            }
+        };
+    }
+}
@@ -1,5 +1,6 @@
 package de.htw.battleship;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -7,6 +8,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.InputMismatchException;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Requires Java 11 or higher.
@@ -20,7 +22,34 @@ public class BattleshipApplication {
     private BattleshipGame game;
     private final Path saveFilePath = Path.of("battleship.save");
     private final Path highScoresFilePath = Path.of("highScores.save");
-    private HighScores highScores = new HighScores();
+    private final Path replayFilePath = Path.of("battleship.replay");
+    private final Path hardBoardsFilePath = Path.of("hardBoards.save");
+    /**
+     * The snapshot of the high score list for the global leaderboard (see LeaderboardMerger)
+     */
+    private final Path highScoresSnapshotPath = Path.of("highScores.snapshot");
+    /**
+     * The id of this node and the version of its last snapshot (see NodeIdentity)
+     */
+    private final Path nodeFilePath = Path.of("highScores.node");
+    /**
+     * The high score list, loaded in the background while the menu is shown
+     */
+    private CompletableFuture<HighScores> highScores = CompletableFuture.completedFuture(new HighScores());
+    private boolean highScoresPrinted = false;
+    /**
+     * Whether "battleship.save" exists. Only checked once, then kept up to
+     * date by saveGame.
+     */
+    private CompletableFuture<Boolean> savedGameExists;
+    /**
+     * The player name and shots of the saved game, or null if there is none
+     */
+    private CompletableFuture<String> savedGameInfo;
+    /**
+     * The precomputed hard villain boards, empty if there is no library file
+     */
+    private CompletableFuture<HardBoardLibrary> hardBoards = CompletableFuture.completedFuture(new HardBoardLibrary());
 
     /**
      * Main method. Starts the BattleShipApplication and calls the mainMenu
@@ -29,10 +58,11 @@ public class BattleshipApplication {
      * @param args The command line arguments
      */
     public static void main(String[] args) {
+        // Generate the boards of the first game while the user reads the menu
+        BoardPool.getShared().prefill(BoardConfiguration.DEFAULT);
         BattleshipApplication battleshipApplication = new BattleshipApplication();
-        if (battleshipApplication.hasSavedHighScores())
-            battleshipApplication.loadHighScores();
-        battleshipApplication.printHighScores();
+        // Read the files while the menu is printed, so large files do not delay it
+        battleshipApplication.startLoading();
         System.out.println("Herzlich Willkommen bei Battleships!\nMichael Draga wünscht ihnen " +
                 "viel Vergnügen.\n");
         battleshipApplication.mainMenu();
@@ -47,6 +77,11 @@ public class BattleshipApplication {
         int option;
         Scanner scanner = new Scanner(System.in);
         while (true) {
+            // The high scores are shown as soon as they are loaded
+            if (!highScoresPrinted && highScores.isDone()) {
+                printHighScores();
+                highScoresPrinted = true;
+            }
             int nOfOptions = printMenu();
             System.out.print("\nOption: ");
             String input = scanner.nextLine();
@@ -109,6 +144,7 @@ public class BattleshipApplication {
                     "(2) Mittlere Schwierigkeit. Platziert Schüsse zufällig, schießt jedoch nicht auf Felder, die bereits beschossen wurden.%n" +
                     "(3) Fortgeschrittene Schwierigkeitstufe. Platziert Schüsse zufällig, bis ein  Schiff getroffen wurde. Ab diesem Zeitpunkt spielt die KI wie ein Mensch.%n" +
                     "(4) \"Sudden Death\". Die schwerste Schwierigkeitsstufe. Sobald die KI an den Zug kommt, hat sie gewonnen.%n" +
+                    "(5) Endspiel-Löser. Spielt wie Stufe 3 und berechnet die letzten Schiffe exakt.%n" +
 
                     "Option: ");
             Scanner scanner = new Scanner(System.in);
@@ -116,10 +152,10 @@ public class BattleshipApplication {
                 aiLevel = scanner.nextInt();
             } catch (InputMismatchException ignored) {
             }
-            if (aiLevel >= 0 && aiLevel <= 4) {
+            if (aiLevel >= 0 && aiLevel <= 5) {
                 break;
             }
-            System.out.println("Bitte geben Sie eine Zahl zwischen 0 und 4 ein.");
+            System.out.println("Bitte geben Sie eine Zahl zwischen 0 und 5 ein.");
         }
         return aiLevel;
     }
@@ -143,7 +179,8 @@ public class BattleshipApplication {
         boolean runningGame = hasRunningGame();
         String menuOutput = String.format("(%d) Neues Spiel starten%n", ++n);
         menuOutput += runningGame ? String.format("(%d) Spiel fortsetzen%n", ++n) : "";
-        menuOutput += hasSavedGame() ? String.format("(%d) Spiel laden%n", ++n) : "";
+        String info = savedGameInfo.getNow(null);
+        menuOutput += hasSavedGame() ? String.format("(%d) Spiel laden%s%n", ++n, info == null ? "" : " (" + info + ")") : "";
         menuOutput += runningGame ? String.format("(%d) Spiel speichern%n", ++n) : "";
         menuOutput += runningGame ? String.format("(%d) AI Level ändern%n", ++n) : "";
         menuOutput += String.format("(%d) Beenden", ++n);
@@ -155,35 +192,122 @@ public class BattleshipApplication {
      * Public wrapper for the highScores.print method
      */
     public void printHighScores() {
-        this.highScores.print();
+        this.highScores.join().print();
     }
 
     /**
-     * Restores the high score list from the file "highScores.save"
+     * Starts loading the high scores and checking the save file in the background
      */
-    private void loadHighScores() {
-        if (!hasSavedHighScores()) {
-            System.out.println("Keine gespeicherten High Scores vorhanden.");
-            return;
+    private void startLoading() {
+        this.highScores = CompletableFuture.supplyAsync(this::loadHighScores);
+        this.savedGameExists = CompletableFuture.supplyAsync(() -> saveFilePath.toFile().exists());
+        this.savedGameInfo = this.savedGameExists.thenApplyAsync(exists -> exists ? loadSavedGameInfo() : null);
+        this.hardBoards = CompletableFuture.supplyAsync(this::loadHardBoards);
+        CompletableFuture.runAsync(this::loadOpeningBooks);
+    }
+
+    /**
+     * Maps the opening books of the AI levels that have one (files
+     * "openingBook-&lt;level&gt;.book", created by OpeningBook.main)
+     */
+    private void loadOpeningBooks() {
+        for (int level = 0; level <= 5; level++) {
+            Path path = OpeningBook.pathOf(level);
+            if (!OpeningBook.isBookLevel(level) || !path.toFile().exists())
+                continue;
+            try {
+                OpeningBook.install(level, OpeningBook.load(path));
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Loads the library of hard villain boards from the file "hardBoards.save"
+     * (created by HardBoardGenerator)
+     *
+     * @return The loaded library or an empty one if there is no file
+     */
+    private HardBoardLibrary loadHardBoards() {
+        if (!hardBoardsFilePath.toFile().exists())
+            return new HardBoardLibrary();
+        try {
+            return HardBoardLibrary.load(hardBoardsFilePath);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return new HardBoardLibrary();
         }
+    }
+
+    /**
+     * Restores the high score list from the file "highScores.save"
+     *
+     * @return The loaded high score list or an empty one if there is no file
+     */
+    private HighScores loadHighScores() {
+        HighScores loaded = new HighScores();
+        if (!hasSavedHighScores())
+            return loaded;
 
         try {
             String savedHighScores = Files.readString(highScoresFilePath, StandardCharsets.UTF_8);
             String[] sHighScores = savedHighScores.split("\n");
-            this.highScores = new HighScores();
             for (String sHighScore :
                     sHighScores) {
                 String[] attributes = sHighScore.split(";");
-                highScores.add(new Score(attributes[0], Integer.parseInt(attributes[1])));
+                loaded.add(new Score(attributes[0], Integer.parseInt(attributes[1])));
             }
         } catch (IOException e) {
             e.printStackTrace();
             System.out.println("Laden fehlgeschlagen.\n");
         }
+        return loaded;
+    }
+
+    /**
+     * Reads the player name and shots of the game in "battleship.save"
+     * without restoring the game
+     *
+     * @return A short description of the saved game or null if it can not be read
+     */
+    private String loadSavedGameInfo() {
+        try {
+            String[] summary = BattleshipGame.readSummary(saveFilePath);
+            if (summary != null)
+                return describeSavedGame(summary[0], summary[1]);
+        } catch (IOException e) {
+            return null;
+        }
+        // Older save files are text
+        try (BufferedReader reader = Files.newBufferedReader(saveFilePath, StandardCharsets.UTF_8)) {
+            // Skip both boards and the AI level
+            for (int i = 0; i < 5; i++)
+                reader.readLine();
+            String playerName = reader.readLine();
+            String shots = reader.readLine();
+            return playerName == null || shots == null ? null : describeSavedGame(playerName, shots);
+        } catch (IOException e) {
+            return null;
+        }
     }
 
     /**
-     * Saves the high score list to the file "highScores.save"
+     * Creates the description of a saved game shown in the menu
+     *
+     * @param playerName The name of the player
+     * @param shots The number of shots fired by the player
+     * @return The description
+     */
+    private static String describeSavedGame(String playerName, String shots) {
+        return playerName + ", " + shots + " Schüsse";
+    }
+
+    /**
+     * Saves the high score list to the file "highScores.save" and a
+     * snapshot of it to "highScores.snapshot". The snapshot belongs to the
+     * node named by the system property "battleship.node" or else to the
+     * random id in "highScores.node".
      */
     private void saveHighScores() {
         File file = highScoresFilePath.toFile();
@@ -192,7 +316,10 @@ public class BattleshipApplication {
         try {
             file.createNewFile();
 
-            Files.writeString(file.toPath(), this.highScores.toString(), StandardCharsets.UTF_8);
+            Files.writeString(file.toPath(), this.highScores.join().toString(), StandardCharsets.UTF_8);
+            NodeIdentity node = NodeIdentity.load(nodeFilePath);
+            String nodeId = System.getProperty("battleship.node", node.getId());
+            this.highScores.join().writeSnapshot(highScoresSnapshotPath, nodeId, node.nextSnapshotVersion());
         } catch (IOException e) {
             e.printStackTrace();
             System.out.println("Speichern fehlgeschlagen.\n");
@@ -203,20 +330,14 @@ public class BattleshipApplication {
      * Restores a game from the file "battleship.save"
      */
     private void loadGame() {
-        if (!hasSavedHighScores()) {
+        if (!hasSavedGame()) {
             System.out.println("Kein gespeicherter Spielstand vorhanden.");
             return;
         }
 
         try {
-            String saveGame = Files.readString(saveFilePath, StandardCharsets.UTF_8);
-            String[] boards = saveGame.split("\n");
-            Board playerBoard = new Board(boards[0], Board.stringToShips(boards[1]));
-            Board villainBoard = new Board(boards[2], Board.stringToShips(boards[3]));
-            int AILevel = Integer.parseInt(boards[4]);
-            String playerName = boards[5];
-            int shots = Integer.parseInt(boards[6]);
-            this.game = new BattleshipGame(playerBoard, villainBoard, AILevel, playerName, shots);
+            this.game = BattleshipGame.load(saveFilePath);
+            this.game.setTargetingModel(openTargetingModel(this.game.playerName));
             System.out.println("Erfolgreich geladen.\n");
         } catch (IOException e) {
             e.printStackTrace();
@@ -228,18 +349,12 @@ public class BattleshipApplication {
      * Saves a game into the file "battleship.save"
      */
     private void saveGame() {
-        File file = saveFilePath.toFile();
-
-        if (file.exists()) file.delete();
         try {
-            file.createNewFile();
-
-            String output = this.game.playerBoard.exportAsString() +
-                    this.game.villainBoard.exportAsString() +
-                    this.game.getAILevel() + "\n" +
-                    this.game.getPlayerName() + "\n" +
-                    this.game.getShots() + "\n";
-            Files.writeString(file.toPath(), output, StandardCharsets.UTF_8);
+            this.game.save(saveFilePath);
+            // Only this application writes the file, so the cached state can be updated without reading it
+            this.savedGameExists = CompletableFuture.completedFuture(true);
+            this.savedGameInfo = CompletableFuture.completedFuture(
+                    describeSavedGame(this.game.getPlayerName(), String.valueOf(this.game.getShots())));
 
             System.out.println("Erfolgreich gespeichert.\n");
         } catch (IOException e) {
@@ -248,13 +363,25 @@ public class BattleshipApplication {
         }
     }
 
+    /**
+     * Saves the replay of the current game into the file "battleship.replay"
+     */
+    private void saveReplay() {
+        try {
+            this.game.replay.save(replayFilePath);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Speichern des Replays fehlgeschlagen.\n");
+        }
+    }
+
     /**
      * Checks if the highScore attribute has been initialized (is not null)
      *
      * @return Whether the highScore attribute has been initialized or not
      */
     private boolean hasActiveHighScores() {
-        return this.highScores != null;
+        return this.highScores != null && !this.highScores.isCompletedExceptionally();
     }
 
     /**
@@ -267,12 +394,13 @@ public class BattleshipApplication {
     }
 
     /**
-     * Checks if file "battleship.save" exists
+     * Checks if file "battleship.save" exists. The file system is only
+     * asked once, later calls use the cached answer.
      *
      * @return Whether the save file exists
      */
     private boolean hasSavedGame() {
-        return saveFilePath.toFile().exists();
+        return savedGameExists.join();
     }
 
     /**
@@ -289,18 +417,15 @@ public class BattleshipApplication {
      */
     private void continueGame() {
         this.game.run();
+        if (this.game.isFinished())
+            saveReplay();
         if (this.game.isFinished() && this.game.playerWon) {
-            if (this.highScores == null) {
-                if (this.hasSavedHighScores()) {
-                    this.loadHighScores();
-                } else {
-                    this.highScores = new HighScores();
-                }
-            }
-            if (!this.highScores.add(new Score(this.game.playerName, this.game.shots)))
+            HighScores highScores = this.highScores.join();
+            if (!highScores.add(new Score(this.game.playerName, this.game.shots)))
                 System.out.println("Ihr Score war zu niedrig, um der High Score Liste hinzugefügt werden " +
                         "zu können. Hoffentlich haben Sie nächstes Mal mehr Glück!");
-            this.highScores.print();
+            highScores.print();
+            this.highScoresPrinted = true;
         }
     }
 
@@ -312,8 +437,41 @@ public class BattleshipApplication {
         System.out.print("\nBitte geben Sie einen Namen für das Scoreboard ein: ");
         Scanner scanner = new Scanner(System.in);
         String playerName = scanner.nextLine().replace("\n", "");
-        this.game = new BattleshipGame(AILevel, playerName);
+        HardBoardLibrary library = hardBoards.getNow(null);
+        Board hardBoard = null;
+        if (library != null && library.size() > 0) {
+            System.out.print("Schweres Gegnerbrett verwenden? (j/n): ");
+            if (scanner.nextLine().trim().equalsIgnoreCase("j"))
+                hardBoard = library.take();
+        }
+        System.out.print("Salven spielen (ein Schuss pro verbleibendem Schiff)? (j/n): ");
+        boolean salvoMode = scanner.nextLine().trim().equalsIgnoreCase("j");
+        TargetingModel targeting = openTargetingModel(playerName);
+        if (hardBoard != null) {
+            this.game = new BattleshipGame(AILevel, playerName, hardBoard);
+            this.game.setTargetingModel(targeting);
+        } else if (targeting != null) {
+            this.game = new BattleshipGame(AILevel, playerName, targeting);
+        } else {
+            this.game = new BattleshipGame(AILevel, playerName);
+        }
+        this.game.setSalvoMode(salvoMode);
         continueGame();
     }
 
+    /**
+     * Opens the targeting model of a player. The game can be played without
+     * it, so an error is only reported.
+     * @param playerName The name of the player
+     * @return The model or null if the file could not be opened
+     */
+    private TargetingModel openTargetingModel(String playerName) {
+        try {
+            return TargetingModel.open(playerName, BoardConfiguration.DEFAULT.getSize());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
 }
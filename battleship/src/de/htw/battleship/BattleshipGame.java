@@ -1,5 +1,16 @@
 package de.htw.battleship;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Scanner;
 
 /**
@@ -8,13 +19,39 @@ import java.util.Scanner;
  * @version 1.0
  */
 public class BattleshipGame {
+    /**
+     * The first int of a save file written by save, older save files are text
+     */
+    private static final int SAVE_MAGIC = 0x42535357;
+    /**
+     * The first int of save files written before the replay was saved with the game
+     */
+    private static final int SAVE_MAGIC_NO_REPLAY = 0x42535356;
+    /**
+     * The size of the chunks a save file is written and read in
+     */
+    private static final int CHUNK_SIZE = 1 << 16;
 
     final Board playerBoard;
     final Board villainBoard;
     final AI villainAI;
     final String playerName;
+    final Replay replay;
+    final SpectatorBroadcaster spectators;
+    /**
+     * Counts the shots of the player across games, or null if they are not counted
+     */
+    private TargetingModel targeting = null;
+    /**
+     * Writes the console output, so the AI can compute while the boards are printed
+     */
+    private final ConsoleRenderer renderer = ConsoleRenderer.getShared();
     int shots = 0;
     boolean playerWon = false;
+    /**
+     * Whether both sides fire a salvo of one shot per surviving ship per turn
+     */
+    private boolean salvoMode = false;
 
     /**
      * Set to TRUE to keep the game loop running. Set to FALSE to exit.
@@ -29,14 +66,42 @@ public class BattleshipGame {
 
     /**
      * Creates a new game with new boards.
+     * The boards are taken from the shared BoardPool if it has some ready.
      * @param AILevel The chosen AI difficulty level
      * @param playerName The chosen player name
      */
     public BattleshipGame(int AILevel, String playerName) {
-        this.playerBoard = new Board();
-        this.villainBoard = new Board();
+        this(AILevel, playerName, BoardPool.getShared().take(BoardConfiguration.DEFAULT));
+    }
+
+    /**
+     * Creates a new game with a new player board and the given villain
+     * board, e.g. a hard board from a HardBoardLibrary.
+     * @param AILevel The chosen AI difficulty level
+     * @param playerName The chosen player name
+     * @param villainBoard The unplayed board of the villain
+     */
+    public BattleshipGame(int AILevel, String playerName, Board villainBoard) {
+        this.playerBoard = BoardPool.getShared().take(BoardConfiguration.DEFAULT);
+        this.villainBoard = villainBoard;
         this.villainAI = new AI(AILevel, this.playerBoard);
         this.playerName = playerName;
+        this.replay = new Replay(this.playerBoard, this.villainBoard);
+        this.spectators = new SpectatorBroadcaster(this.playerBoard, this.villainBoard);
+    }
+
+    /**
+     * Creates a new game whose villain ships avoid the fields the player
+     * usually shoots at. The shots of the player are added to the model.
+     * @param AILevel The chosen AI difficulty level
+     * @param playerName The chosen player name
+     * @param targeting The targeting model of the player
+     */
+    public BattleshipGame(int AILevel, String playerName, TargetingModel targeting) {
+        this(AILevel, playerName, targeting.isTrained() ?
+                new Board(BoardConfiguration.DEFAULT, targeting.getHeat()) :
+                BoardPool.getShared().take(BoardConfiguration.DEFAULT));
+        this.targeting = targeting;
     }
 
     /**
@@ -48,11 +113,27 @@ public class BattleshipGame {
      * @param shots The saved amount of shots fired by the player in the saved game
      */
     public BattleshipGame(Board playerBoard, Board villainBoard, int AILevel, String playerName, int shots) {
+        this(playerBoard, villainBoard, AILevel, playerName, shots, null);
+    }
+
+    /**
+     * Creates a game based on saved boards and the saved replay of a previous game.
+     * @param playerBoard The saved player board
+     * @param villainBoard The saved villain board
+     * @param AILevel The saved AI difficulty level
+     * @param playerName The saved name of the player
+     * @param shots The saved amount of shots fired by the player in the saved game
+     * @param replay The saved replay, continued with the boards, or null to start a new one
+     */
+    private BattleshipGame(Board playerBoard, Board villainBoard, int AILevel, String playerName, int shots,
+                           Replay replay) {
         this.playerBoard = playerBoard;
         this.villainBoard = villainBoard;
         this.villainAI = new AI(AILevel, this.playerBoard);
         this.playerName = playerName;
         this.shots = shots;
+        this.replay = replay != null ? replay : new Replay(this.playerBoard, this.villainBoard);
+        this.spectators = new SpectatorBroadcaster(this.playerBoard, this.villainBoard);
     }
 
 
@@ -62,12 +143,148 @@ public class BattleshipGame {
      */
     public void run() {
         this.running = true;
-        System.out.println("Spiel gestartet. Drücke ENTER während der Zieleingabe, im zum Hauptmenü zurückzukehren.\n");
+        renderer.println("Spiel gestartet. Drücke ENTER während der Zieleingabe, im zum Hauptmenü zurückzukehren.\n");
 
         while (this.running) {
-            playersTurn();
-            if (this.running) villainsTurn();
+            if (salvoMode) {
+                playersSalvo();
+                if (this.running) villainsSalvo();
+            } else {
+                playersTurn();
+                if (this.running) villainsTurn();
+            }
+        }
+        renderer.flush();
+        if (targeting != null)
+            targeting.flush();
+    }
+
+    /**
+     * Executes a shot of the player without any console output,
+     * e.g. for games played by a client of the SessionManager.
+     * @param shot The position the player shoots at
+     * @return The result code of the shot (see Board.shoot)
+     */
+    public int firePlayerShot(Vector2d shot) {
+        int result = villainBoard.shoot(shot);
+        replay.record(Replay.PLAYER, shot);
+        if (targeting != null)
+            targeting.recordShot(shot.x, shot.y);
+        spectators.publishShot(Replay.PLAYER, shot, result);
+        shots++;
+        if (villainBoard.isWholeFleetSunk())
+            this.playerWon = true;
+        return result;
+    }
+
+    /**
+     * Executes a shot of the villain without any console output
+     * @param shot The position the villain shoots at, usually from villainAI.nextMove()
+     * @return The result code of the shot (see Board.shoot)
+     */
+    public int fireVillainShot(Vector2d shot) {
+        int result = playerBoard.shoot(shot);
+        replay.record(Replay.VILLAIN, shot);
+        spectators.publishShot(Replay.VILLAIN, shot, result);
+        if (result == 2)
+            villainAI.loseMemory();
+        return result;
+    }
+
+    /**
+     * Executes a salvo of the player without any console output
+     * @param salvo The positions the player shoots at
+     * @return The result code of every shot (see Board.shootSalvo)
+     */
+    public int[] firePlayerSalvo(Vector2d[] salvo) {
+        int[] results = new int[salvo.length];
+        villainBoard.shootSalvo(toCells(salvo, villainBoard.getSize()), results);
+        for (int i = 0; i < salvo.length; i++) {
+            replay.record(Replay.PLAYER, salvo[i]);
+            if (targeting != null)
+                targeting.recordShot(salvo[i].x, salvo[i].y);
+            spectators.publishShot(Replay.PLAYER, salvo[i], results[i]);
+        }
+        shots += salvo.length;
+        if (villainBoard.isWholeFleetSunk())
+            this.playerWon = true;
+        return results;
+    }
+
+    /**
+     * Executes a salvo of the villain without any console output
+     * @param salvo The positions the villain shoots at, usually from villainAI.nextSalvo()
+     * @return The result code of every shot (see Board.shootSalvo)
+     */
+    public int[] fireVillainSalvo(Vector2d[] salvo) {
+        int[] results = new int[salvo.length];
+        playerBoard.shootSalvo(toCells(salvo, playerBoard.getSize()), results);
+        for (int i = 0; i < salvo.length; i++) {
+            replay.record(Replay.VILLAIN, salvo[i]);
+            spectators.publishShot(Replay.VILLAIN, salvo[i], results[i]);
         }
+        return results;
+    }
+
+    /**
+     * Converts positions into field indexes
+     * @param positions The positions
+     * @param size The size of the board
+     * @return The indexes (y * size + x) of the positions
+     */
+    private static int[] toCells(Vector2d[] positions, int size) {
+        int[] cells = new int[positions.length];
+        for (int i = 0; i < positions.length; i++)
+            cells[i] = positions[i].y * size + positions[i].x;
+        return cells;
+    }
+
+    /**
+     * Gets the number of shots of the player's next salvo
+     * @return The number of ships of the player that are not sunk
+     */
+    public int getPlayerSalvoSize() {
+        return playerBoard.getRemainingShipCount();
+    }
+
+    /**
+     * Gets the number of shots of the villain's next salvo
+     * @return The number of ships of the villain that are not sunk
+     */
+    public int getVillainSalvoSize() {
+        return villainBoard.getRemainingShipCount();
+    }
+
+    /**
+     * Setter for the salvoMode attribute
+     * @param salvoMode Whether both sides fire one shot per surviving ship per turn
+     */
+    public void setSalvoMode(boolean salvoMode) {
+        this.salvoMode = salvoMode;
+    }
+
+    /**
+     * Getter for the salvoMode attribute
+     * @return Whether both sides fire one shot per surviving ship per turn
+     */
+    public boolean isSalvoMode() {
+        return salvoMode;
+    }
+
+    /**
+     * Setter for the targeting attribute, e.g. to keep counting the shots of a loaded game
+     * @param targeting The targeting model of the player or null
+     */
+    public void setTargetingModel(TargetingModel targeting) {
+        this.targeting = targeting;
+    }
+
+    /**
+     * Getter for the targeting attribute
+     * @return The targeting model of the player or null if the shots are not counted
+     */
+    public TargetingModel getTargetingModel() {
+        return targeting;
     }
 
     /**
@@ -93,16 +310,16 @@ public class BattleshipGame {
      * Prints the result of the shot on the console, given the result code
      * @param result The result code returned from the Board.shoot method
      */
-    private static void printResult(int result) {
+    private void printResult(int result) {
         switch (result) {
             case 0:
-                System.out.println("Daneben! Schade...");
+                renderer.println("Daneben! Schade...");
                 break;
             case 1: 
-                System.out.println("Treffer!");
+                renderer.println("Treffer!");
                 break;
             case 2: 
-                System.out.println("Piratenschiff versenkt!");
+                renderer.println("Piratenschiff versenkt!");
                 break;
         }
     }
@@ -113,40 +330,40 @@ public class BattleshipGame {
      */
     private void playersTurn() {
 
-        System.out.println("Spieler ist am Zug.");
-        villainBoard.print(hideVillainShips);
-        System.out.println();
+        renderer.println("Spieler ist am Zug.");
+        renderer.show(villainBoard, hideVillainShips);
+        renderer.println();
 
         Vector2d playerShot;
 
-        System.out.print("Feld: ");
+        renderer.print("Feld: ");
+        renderer.flush();
         Scanner scanner = new Scanner(System.in);
         String input = scanner.nextLine();
         if (input.equals("")) {
-            System.out.println("Spiel pausiert.");
+            renderer.println("Spiel pausiert.");
             running = false;
             return;
         } else if (validateInput(input)) {
             playerShot = convertCoordinatesToInt(input);
         } else {
-            System.out.println("Bitte geben Sie zuerst einen Buchstaben von A bis J (Großschreibung irrelevant)" +
+            renderer.println("Bitte geben Sie zuerst einen Buchstaben von A bis J (Großschreibung irrelevant)" +
                     " und direkt danach eine Zahl von 1 bis 10 ein. Beispiel: a1 (gleichbedeutend zu A1)");
             playersTurn();
             return;
         }
-        int result = villainBoard.shoot(playerShot);
-        shots++;
+        int result = firePlayerShot(playerShot);
 
-        System.out.println();
+        renderer.println();
 
-        villainBoard.print(hideVillainShips);
+        renderer.show(villainBoard, hideVillainShips);
 
         printResult(result);
 
         villainBoard.deactivateLastMove();
 
         if (this.isFinished()) {
-            System.out.println("\nSie haben gewonnen! Herzlichen Glückwunsch!\n");
+            renderer.println("\nSie haben gewonnen! Herzlichen Glückwunsch!\n");
             this.running = false;
             this.playerWon = true;
             return;
@@ -157,31 +374,116 @@ public class BattleshipGame {
             playersTurn();
     }
 
+    /**
+     * Prompts the player to input all fields of their salvo in one line and
+     * executes them. If the player just hits enter they get back to the main menu.
+     */
+    private void playersSalvo() {
+        int salvoSize = getPlayerSalvoSize();
+        renderer.println("Spieler ist am Zug.");
+        renderer.show(villainBoard, hideVillainShips);
+        renderer.println();
+
+        renderer.print("Felder (" + salvoSize + ", durch Leerzeichen getrennt): ");
+        renderer.flush();
+        Scanner scanner = new Scanner(System.in);
+        String input = scanner.nextLine().trim();
+        if (input.equals("")) {
+            renderer.println("Spiel pausiert.");
+            running = false;
+            return;
+        }
+        String[] inputs = input.split("[\\s,;]+");
+        boolean valid = inputs.length == salvoSize;
+        for (int i = 0; i < inputs.length && valid; i++)
+            valid = validateInput(inputs[i]);
+        if (!valid) {
+            renderer.println("Bitte geben Sie genau " + salvoSize + " Felder ein, jeweils einen Buchstaben von A bis J" +
+                    " und direkt danach eine Zahl von 1 bis 10. Beispiel: a1 b5 j10");
+            playersSalvo();
+            return;
+        }
+        Vector2d[] salvo = new Vector2d[inputs.length];
+        for (int i = 0; i < inputs.length; i++)
+            salvo[i] = convertCoordinatesToInt(inputs[i]);
+        int[] results = firePlayerSalvo(salvo);
+
+        renderer.println();
+        renderer.show(villainBoard, hideVillainShips);
+        printSalvoResults(salvo, results);
+        villainBoard.deactivateLastMove();
+
+        if (this.isFinished()) {
+            renderer.println("\nSie haben gewonnen! Herzlichen Glückwunsch!\n");
+            this.running = false;
+            this.playerWon = true;
+            return;
+        }
+        pause();
+    }
+
+    /**
+     * Lets the villain (computer) choose and play their salvo.
+     */
+    private void villainsSalvo() {
+        renderer.println("Gegner ist am Zug.");
+        renderer.show(playerBoard, false);
+        Vector2d[] salvo = villainAI.nextSalvo(getVillainSalvoSize());
+        StringBuilder targets = new StringBuilder("Gegner zielt auf");
+        for (Vector2d shot : salvo)
+            targets.append(' ').append(convertCoordinatesToString(shot));
+        renderer.println(targets.toString());
+        renderer.println();
+
+        int[] results = fireVillainSalvo(salvo);
+
+        renderer.show(playerBoard, false);
+        renderer.println();
+        printSalvoResults(salvo, results);
+        playerBoard.deactivateLastMove();
+
+        if (this.isFinished()) {
+            renderer.println("\nDer Gegner hat gewonnen. Hoffentlich hast du nächstes Mal mehr Glück!\n");
+            this.running = false;
+            return;
+        }
+        pause();
+    }
+
+    /**
+     * Prints the result of every shot of a salvo
+     * @param salvo The positions of the shots
+     * @param results The result codes returned from the Board.shootSalvo method
+     */
+    private void printSalvoResults(Vector2d[] salvo, int[] results) {
+        for (int i = 0; i < salvo.length; i++) {
+            renderer.print(convertCoordinatesToString(salvo[i]) + ": ");
+            printResult(results[i]);
+        }
+    }
+
     /**
      * Lets the villain (computer) choose and play their shot.
      */
     private void villainsTurn() {
 
-        System.out.println("Gegner ist am Zug.");
-        playerBoard.print(false);
+        renderer.println("Gegner ist am Zug.");
+        renderer.show(playerBoard, false);
         Vector2d villainShot = getVillainShot();
-        System.out.println();
+        renderer.println();
 
-        int result = playerBoard.shoot(villainShot);
+        int result = fireVillainShot(villainShot);
 
-        playerBoard.print(false);
+        renderer.show(playerBoard, false);
 
-        System.out.println();
+        renderer.println();
 
         printResult(result);
 
         playerBoard.deactivateLastMove();
 
-        if (result == 2)
-            villainAI.loseMemory();
-
         if (this.isFinished()) {
-            System.out.println("\nDer Gegner hat gewonnen. Hoffentlich hast du nächstes Mal mehr Glück!\n");
+            renderer.println("\nDer Gegner hat gewonnen. Hoffentlich hast du nächstes Mal mehr Glück!\n");
             this.running = false;
             return;
         }
@@ -198,9 +500,10 @@ public class BattleshipGame {
      * Can be called anywhere in the game to avoid too much output at once.
      */
     private void pause() {
-        System.out.println();
-        System.out.println("Drücke ENTER um fortzufahren...");
-        System.out.println();
+        renderer.println();
+        renderer.println("Drücke ENTER um fortzufahren...");
+        renderer.println();
+        renderer.flush();
         Scanner scanner = new Scanner(System.in);
         scanner.nextLine();
     }
@@ -211,7 +514,7 @@ public class BattleshipGame {
      */
     private Vector2d getVillainShot() {
         Vector2d shot = villainAI.nextMove();
-        System.out.println("Gegner zielt auf " + convertCoordinatesToString(shot));
+        renderer.println("Gegner zielt auf " + convertCoordinatesToString(shot));
         return shot;
     }
 
@@ -247,6 +550,131 @@ public class BattleshipGame {
         return x + y;
     }
 
+    /**
+     * Exports the game as a string: both boards, the AI level, the player
+     * name, the number of shots, the memory of the AI and whether salvos
+     * are fired, one per line
+     * @return The exported game
+     */
+    public String exportAsString() {
+        return this.playerBoard.exportAsString() +
+                this.villainBoard.exportAsString() +
+                this.getAILevel() + "\n" +
+                this.getPlayerName() + "\n" +
+                this.getShots() + "\n" +
+                this.villainAI.exportMemory() + "\n" +
+                this.salvoMode + "\n";
+    }
+
+    /**
+     * Creates a game from a string exported by exportAsString.
+     * Strings without the memory of the AI or the salvo mode (older save
+     * files) can be read as well.
+     * @param savedGame The exported game
+     * @return The restored game
+     */
+    public static BattleshipGame fromExportedString(String savedGame) {
+        String[] lines = savedGame.split("\n");
+        Board playerBoard = new Board(lines[0], Board.stringToShips(lines[1]));
+        Board villainBoard = new Board(lines[2], Board.stringToShips(lines[3]));
+        int AILevel = Integer.parseInt(lines[4]);
+        String playerName = lines[5];
+        int shots = Integer.parseInt(lines[6]);
+        BattleshipGame game = new BattleshipGame(playerBoard, villainBoard, AILevel, playerName, shots);
+        if (lines.length > 7)
+            game.villainAI.importMemory(lines[7]);
+        if (lines.length > 8)
+            game.salvoMode = Boolean.parseBoolean(lines[8]);
+        game.playerWon = villainBoard.isWholeFleetSunk();
+        return game;
+    }
+
+    /**
+     * Saves the game into a file. Unlike exportAsString the boards are
+     * streamed run-length encoded (see Board.writeTo) through a buffer of
+     * CHUNK_SIZE bytes, so even huge boards are never held as text. The
+     * player name and the shots come first, so a menu can show them
+     * without reading the boards (see readSummary). The replay follows the
+     * boards, so a loaded game keeps its recorded shots.
+     * @param path The path of the file
+     * @throws IOException If the file can not be written
+     */
+    public void save(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Channels.newOutputStream(channel), CHUNK_SIZE))) {
+            out.writeInt(SAVE_MAGIC);
+            out.writeUTF(getPlayerName());
+            out.writeInt(getShots());
+            out.writeInt(getAILevel());
+            out.writeBoolean(salvoMode);
+            out.writeUTF(villainAI.exportMemory());
+            playerBoard.writeTo(out);
+            villainBoard.writeTo(out);
+            replay.writeTo(out);
+        }
+    }
+
+    /**
+     * Restores a game from a file written by save, or from an older save
+     * file containing the text of exportAsString
+     * @param path The path of the file
+     * @return The restored game
+     * @throws IOException If the file can not be read or is damaged
+     */
+    public static BattleshipGame load(Path path) throws IOException {
+        try (DataInputStream in = openSaveFile(path)) {
+            int magic = in.readInt();
+            if (magic != SAVE_MAGIC && magic != SAVE_MAGIC_NO_REPLAY)
+                return fromExportedString(Files.readString(path, StandardCharsets.UTF_8));
+            String playerName = in.readUTF();
+            int shots = in.readInt();
+            int AILevel = in.readInt();
+            boolean salvoMode = in.readBoolean();
+            String memory = in.readUTF();
+            Board playerBoard = Board.readFrom(in);
+            Board villainBoard = Board.readFrom(in);
+            Replay replay = magic == SAVE_MAGIC ? Replay.readFrom(in, playerBoard, villainBoard) : null;
+            BattleshipGame game = new BattleshipGame(playerBoard, villainBoard, AILevel, playerName, shots, replay);
+            game.villainAI.importMemory(memory);
+            game.salvoMode = salvoMode;
+            game.playerWon = villainBoard.isWholeFleetSunk();
+            return game;
+        } catch (RuntimeException e) {
+            throw new IOException("Spielstand beschädigt: " + path, e);
+        }
+    }
+
+    /**
+     * Reads the player name and the shots of a file written by save
+     * without reading the boards
+     * @param path The path of the file
+     * @return The player name and the number of shots or null if the file
+     * is an older save file
+     * @throws IOException If the file can not be read
+     */
+    public static String[] readSummary(Path path) throws IOException {
+        try (DataInputStream in = openSaveFile(path)) {
+            int magic = in.readInt();
+            if (magic != SAVE_MAGIC && magic != SAVE_MAGIC_NO_REPLAY)
+                return null;
+            String playerName = in.readUTF();
+            return new String[] {playerName, String.valueOf(in.readInt())};
+        }
+    }
+
+    /**
+     * Opens a save file for reading in chunks of CHUNK_SIZE bytes
+     * @param path The path of the file
+     * @return The stream
+     * @throws IOException If the file can not be opened
+     */
+    private static DataInputStream openSaveFile(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        return new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), CHUNK_SIZE));
+    }
+
     /**
      * Wrapper for the setter of the difficulty level of the AI
      * @param AILevel The desired difficulty level for the AI
@@ -0,0 +1,103 @@
+package de.htw.battleship;
+
+import java.util.ArrayList;
+
+/**
+ * An instance of this class holds one counter per field, stored "bit
+ * sliced": plane p holds bit p of every counter. Adding a whole mask of
+ * fields to the counters is a ripple carry over the planes, which handles
+ * 64 fields per long operation. The fields with the highest counter are
+ * found the same way, from the highest plane down.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class BitCounter {
+    private final int size;
+    private final ArrayList<long[]> planes = new ArrayList<long[]>();
+    /**
+     * Reused buffer for the carry bits of add
+     */
+    private long[] carry = null;
+
+    /**
+     * Generate new counters, all 0
+     * @param size The number of counters (fields)
+     */
+    public BitCounter(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Adds a weight to the counters of all fields of a mask
+     * @param mask The fields
+     * @param weight The number added to every counter of the mask (at least 0)
+     */
+    public void add(BitMask mask, int weight) {
+        long[] words = mask.words();
+        if (carry == null)
+            carry = new long[words.length];
+        for (int plane = 0; weight != 0; plane++, weight >>>= 1) {
+            if ((weight & 1) == 0)
+                continue;
+            // Add the mask at this plane and let the carry ripple up, one plane at a time
+            System.arraycopy(words, 0, carry, 0, words.length);
+            boolean carrying = true;
+            for (int p = plane; carrying; p++) {
+                while (planes.size() <= p)
+                    planes.add(new long[words.length]);
+                long[] bits = planes.get(p);
+                long any = 0;
+                for (int i = 0; i < bits.length; i++) {
+                    long next = bits[i] & carry[i];
+                    bits[i] ^= carry[i];
+                    carry[i] = next;
+                    any |= next;
+                }
+                carrying = any != 0;
+            }
+        }
+    }
+
+    /**
+     * Gets the counter of a field
+     * @param index The index of the field
+     * @return The value of the counter
+     */
+    public long get(int index) {
+        long value = 0;
+        for (int p = 0; p < planes.size(); p++) {
+            if ((planes.get(p)[index >>> 6] & (1L << index)) != 0)
+                value |= 1L << p;
+        }
+        return value;
+    }
+
+    /**
+     * Reduces a set of fields to the ones with the highest counter
+     * @param candidates The fields being compared, changed to the fields
+     *                   with the highest counter among them
+     */
+    public void retainMaximum(BitMask candidates) {
+        long[] words = candidates.words();
+        long[] next = new long[words.length];
+        for (int p = planes.size() - 1; p >= 0; p--) {
+            long[] bits = planes.get(p);
+            boolean any = false;
+            for (int i = 0; i < words.length; i++) {
+                next[i] = words[i] & bits[i];
+                any |= next[i] != 0;
+            }
+            // Only if some candidate has this bit, the ones without it are dropped
+            if (any)
+                System.arraycopy(next, 0, words, 0, words.length);
+        }
+    }
+
+    /**
+     * Getter for the size attribute
+     * @return The number of counters
+     */
+    public int getSize() {
+        return size;
+    }
+}
@@ -0,0 +1,306 @@
+package de.htw.battleship;
+
+import java.util.Arrays;
+
+/**
+ * An instance of this class represents a set of fields on a board as a
+ * bit mask. Field (x, y) is stored at bit y * width + x, so set operations
+ * over whole boards only take a few long operations. Shifting a mask by
+ * one field or one row moves all fields at once, 64 per operation.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class BitMask {
+    private final long[] words;
+    private final int size;
+
+    /**
+     * Generate a new empty bit mask
+     * @param size The number of bits (fields) the mask can hold
+     */
+    public BitMask(int size) {
+        this.size = size;
+        this.words = new long[(size + 63) >>> 6];
+    }
+
+    /**
+     * Generate a new bit mask with the same bits as the given one
+     * @param other The bit mask being copied
+     */
+    public BitMask(BitMask other) {
+        this.size = other.size;
+        this.words = other.words.clone();
+    }
+
+    /**
+     * Checks whether the bit at the given index is set
+     * @param index The index of the bit
+     * @return Whether the bit is set
+     */
+    public boolean get(int index) {
+        return (words[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Sets the bit at the given index
+     * @param index The index of the bit
+     */
+    public void set(int index) {
+        words[index >>> 6] |= 1L << index;
+    }
+
+    /**
+     * Clears the bit at the given index
+     * @param index The index of the bit
+     */
+    public void clear(int index) {
+        words[index >>> 6] &= ~(1L << index);
+    }
+
+    /**
+     * Reads a run of up to 64 consecutive bits, e.g. a part of a row of a
+     * board, so a small shape can be tested against it with one operation
+     * @param from The index of the first bit
+     * @param count The number of bits (1 to 64), must not go past the end of the mask
+     * @return The bits, the bit at index from being the lowest one
+     */
+    public long getBits(int from, int count) {
+        int word = from >>> 6;
+        int offset = from & 63;
+        long bits = words[word] >>> offset;
+        if (offset + count > 64)
+            bits |= words[word + 1] << (64 - offset);
+        return count == 64 ? bits : bits & ((1L << count) - 1);
+    }
+
+    /**
+     * Sets all bits of a range
+     * @param from The index of the first bit
+     * @param to The index after the last bit
+     */
+    public void set(int from, int to) {
+        if (from >= to)
+            return;
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> (63 - ((to - 1) & 63));
+        if (first == last) {
+            words[first] |= firstMask & lastMask;
+            return;
+        }
+        words[first] |= firstMask;
+        for (int i = first + 1; i < last; i++)
+            words[i] = -1L;
+        words[last] |= lastMask;
+    }
+
+    /**
+     * Sets all bits that are set in the given mask after shifting it
+     * @param other The mask being added
+     * @param shift The number of bits the given mask is moved to higher
+     *              indexes (negative: to lower indexes)
+     */
+    public void orShifted(BitMask other, int shift) {
+        int wordShift = Math.floorDiv(shift, 64);
+        int bitShift = Math.floorMod(shift, 64);
+        for (int i = 0; i < words.length; i++)
+            words[i] |= other.shiftedWord(i - wordShift, bitShift);
+        trimLastWord();
+    }
+
+    /**
+     * Clears all bits that are set in the given mask after shifting it
+     * @param other The mask being removed
+     * @param shift The number of bits the given mask is moved to higher
+     *              indexes (negative: to lower indexes)
+     */
+    public void andNotShifted(BitMask other, int shift) {
+        int wordShift = Math.floorDiv(shift, 64);
+        int bitShift = Math.floorMod(shift, 64);
+        for (int i = 0; i < words.length; i++)
+            words[i] &= ~other.shiftedWord(i - wordShift, bitShift);
+    }
+
+    /**
+     * Calculates a word of this mask as if it was shifted. Bits shifted in
+     * from outside the mask are 0.
+     * @param source The index of the word that is moved to the wanted position
+     * @param bitShift The remaining shift within the words (0 to 63)
+     * @return The word
+     */
+    private long shiftedWord(int source, int bitShift) {
+        long low = source >= 0 && source < words.length ? words[source] : 0L;
+        if (bitShift == 0)
+            return low;
+        long high = source - 1 >= 0 && source - 1 < words.length ? words[source - 1] : 0L;
+        return (low << bitShift) | (high >>> (64 - bitShift));
+    }
+
+    /**
+     * Clears the unused bits of the last word, which shifts can fill
+     */
+    private void trimLastWord() {
+        if ((size & 63) != 0)
+            words[words.length - 1] &= -1L >>> (64 - (size & 63));
+    }
+
+    /**
+     * Finds the n-th set bit, counting whole words first
+     * @param n The number of set bits to skip (0 for the first set bit)
+     * @return The index of the bit or -1 if fewer bits are set
+     */
+    public int selectSetBit(int n) {
+        for (int i = 0; i < words.length; i++) {
+            int count = Long.bitCount(words[i]);
+            if (n >= count) {
+                n -= count;
+                continue;
+            }
+            long word = words[i];
+            for (int j = 0; j < n; j++)
+                word &= word - 1;
+            return (i << 6) + Long.numberOfTrailingZeros(word);
+        }
+        return -1;
+    }
+
+    /**
+     * Gives direct access to the words of the mask for word-parallel
+     * algorithms in this package (see BitCounter)
+     * @return The backing array, bit i is bit (i % 64) of word i / 64
+     */
+    long[] words() {
+        return words;
+    }
+
+    /**
+     * Overwrites the bits of this mask with the bits of the given mask
+     * @param other The mask being copied
+     */
+    public void copyFrom(BitMask other) {
+        System.arraycopy(other.words, 0, words, 0, words.length);
+    }
+
+    /**
+     * Counts the bits that are set in this mask but not in the given mask
+     * @param other The mask being subtracted
+     * @return The number of bits only set in this mask
+     */
+    public int cardinalityAndNot(BitMask other) {
+        int count = 0;
+        for (int i = 0; i < words.length; i++)
+            count += Long.bitCount(words[i] & ~other.words[i]);
+        return count;
+    }
+
+    /**
+     * Clears all bits of the mask
+     */
+    public void clearAll() {
+        Arrays.fill(words, 0L);
+    }
+
+    /**
+     * Sets all bits that are set in the given mask
+     * @param other The mask being added
+     */
+    public void or(BitMask other) {
+        for (int i = 0; i < words.length; i++)
+            words[i] |= other.words[i];
+    }
+
+    /**
+     * Clears all bits that are not set in the given mask
+     * @param other The mask being intersected with
+     */
+    public void and(BitMask other) {
+        for (int i = 0; i < words.length; i++)
+            words[i] &= other.words[i];
+    }
+
+    /**
+     * Clears all bits that are set in the given mask
+     * @param other The mask being removed
+     */
+    public void andNot(BitMask other) {
+        for (int i = 0; i < words.length; i++)
+            words[i] &= ~other.words[i];
+    }
+
+    /**
+     * Checks whether this mask and the given mask have at least one bit in common
+     * @param other The mask being checked
+     * @return Whether both masks share a set bit
+     */
+    public boolean intersects(BitMask other) {
+        for (int i = 0; i < words.length; i++) {
+            if ((words[i] & other.words[i]) != 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether every bit of the given mask is also set in this mask
+     * @param other The mask being checked
+     * @return Whether this mask is a superset of the given mask
+     */
+    public boolean containsAll(BitMask other) {
+        for (int i = 0; i < words.length; i++) {
+            if ((other.words[i] & ~words[i]) != 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether no bit is set
+     * @return Whether the mask is empty
+     */
+    public boolean isEmpty() {
+        for (long word : words) {
+            if (word != 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Counts the set bits
+     * @return The number of set bits
+     */
+    public int cardinality() {
+        int count = 0;
+        for (long word : words)
+            count += Long.bitCount(word);
+        return count;
+    }
+
+    /**
+     * Finds the next set bit starting at the given index
+     * @param from The index to start searching at
+     * @return The index of the next set bit or -1 if there is none
+     */
+    public int nextSetBit(int from) {
+        if (from >= size)
+            return -1;
+        int i = from >>> 6;
+        long word = words[i] & (-1L << from);
+        while (true) {
+            if (word != 0)
+                return (i << 6) + Long.numberOfTrailingZeros(word);
+            if (++i == words.length)
+                return -1;
+            word = words[i];
+        }
+    }
+
+    /**
+     * Getter for the size attribute
+     * @return The number of bits the mask can hold
+     */
+    public int getSize() {
+        return size;
+    }
+}
@@ -0,0 +1,248 @@
+package de.htw.battleship;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Compares the word-parallel board scans (64 fields per long operation)
+ * with the same scans done field by field:
+ * <ul>
+ *     <li>the check whether the whole fleet is sunk</li>
+ *     <li>the legal top left corners of a ship (placement)</li>
+ *     <li>the number of placements covering every field (targeting)</li>
+ * </ul>
+ * The boards carry one classic fleet per 10 rows, so the scans do not
+ * stop early, the fleet check runs on a board whose fleet is sunk.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class BitboardBenchmark {
+    private static final long MIN_MEASURE_NANOS = 200_000_000L;
+
+    /**
+     * Runs the benchmark and prints the times per board size
+     * @param args The board sizes (default 100, 1000 and 10000)
+     */
+    public static void main(String[] args) {
+        int[] sizes = {100, 1000, 10000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+                sizes[i] = Integer.parseInt(args[i]);
+        }
+        System.out.println("Größe        Prüfung             Feldweise      Bitweise   Faktor");
+        for (int size : sizes)
+            run(size);
+    }
+
+    /**
+     * Measures all scans on one board size
+     * @param size The width and height of the board
+     */
+    private static void run(int size) {
+        int[] classic = BoardConfiguration.DEFAULT.getShipLengths();
+        int fleets = Math.max(1, size / 10);
+        int[] lengths = new int[classic.length * fleets];
+        for (int i = 0; i < lengths.length; i++)
+            lengths[i] = classic[i % classic.length];
+        Board board = new Board(new BoardConfiguration(size, lengths));
+        measureFleetCheck(board);
+        measureAnchors(board);
+        measureDensity(board);
+    }
+
+    /**
+     * Measures the fleet check on a copy of the board whose fleet is sunk
+     * @param board The board
+     */
+    private static void measureFleetCheck(Board board) {
+        Board sunk = board.copy();
+        for (Ship ship : sunk.getFleet()) {
+            for (int j = 0; j < ship.getShipLength(); j++)
+                sunk.shoot(new Vector2d(ship.getCellX(j), ship.getCellY(j)));
+        }
+        print(board.getSize(), "Flotte versenkt",
+                measure(() -> isWholeFleetSunkByField(sunk) ? 1 : 0),
+                measure(() -> sunk.isWholeFleetSunk() ? 1 : 0));
+    }
+
+    /**
+     * Measures the search for the legal positions of a ship of length 3
+     * @param board The board
+     */
+    private static void measureAnchors(Board board) {
+        ShipShape shape = ShipShape.line(3);
+        print(board.getSize(), "Ankerfelder",
+                measure(() -> countAnchorsByField(board, shape)),
+                measure(() -> {
+                    BitMask blocked = board.dilate(shipCells(board));
+                    long count = 0;
+                    for (int r = 0; r < shape.getRotationCount(); r++)
+                        count += board.legalAnchors(shape.getRotation(r), blocked).cardinality();
+                    return count;
+                }));
+    }
+
+    /**
+     * Measures the placement counting after some shots at the board
+     * @param board The board, it is shot at
+     */
+    private static void measureDensity(Board board) {
+        // Some shots, so the targeting sees misses and sunk ships
+        int size = board.getSize();
+        for (int i = 0; i < size * size / 20; i++)
+            board.shoot(new Vector2d((int) ((i * 7919L) % size), (int) ((i * 104729L) % size)));
+        print(size, "Dichte",
+                measure(() -> densityByField(board)[0]),
+                measure(() -> PlacementDensity.count(board).get(0)));
+    }
+
+    /**
+     * Prints one line of the result table
+     * @param size The board size
+     * @param name The name of the scan
+     * @param byField The nanoseconds of the scan done field by field
+     * @param byWord The nanoseconds of the word-parallel scan
+     */
+    private static void print(int size, String name, double byField, double byWord) {
+        System.out.printf("%-12s %-16s %9.3f ms %9.3f ms %7.1fx%n", size + "x" + size, name,
+                byField / 1e6, byWord / 1e6, byField / byWord);
+    }
+
+    /**
+     * Runs a scan repeatedly for a while, after warming it up
+     * @param scan The scan, its result is kept so it is not optimized away
+     * @return The average nanoseconds per run
+     */
+    private static double measure(LongSupplier scan) {
+        // Warm up, so the JIT compiler has compiled the scan
+        long sink = 0;
+        long start = System.nanoTime();
+        do {
+            sink += scan.getAsLong();
+        } while (System.nanoTime() - start < MIN_MEASURE_NANOS);
+        int runs = 0;
+        start = System.nanoTime();
+        long elapsed;
+        do {
+            sink += scan.getAsLong();
+            runs++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < MIN_MEASURE_NANOS);
+        if (sink == Long.MIN_VALUE)
+            System.out.println();
+        return (double) elapsed / runs;
+    }
+
+    /**
+     * The fleet check done field by field
+     * @param board The board
+     * @return Whether no field holds a ship that has not been hit
+     */
+    private static boolean isWholeFleetSunkByField(Board board) {
+        for (int y = 0; y < board.getSize(); y++) {
+            for (int x = 0; x < board.getSize(); x++) {
+                if (board.getField(x, y) == Board.SHIP)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Collects the fields holding a ship
+     * @param board The board
+     * @return A mask of the fields holding a ship (hit or not)
+     */
+    private static BitMask shipCells(Board board) {
+        BitMask cells = new BitMask(board.getSize() * board.getSize());
+        for (Ship ship : board.getFleet()) {
+            for (int j = 0; j < ship.getShipLength(); j++)
+                cells.set(ship.getCellY(j) * board.getSize() + ship.getCellX(j));
+        }
+        return cells;
+    }
+
+    /**
+     * Counts the legal top left corners of a shape field by field, checking
+     * the surroundings of every field of the shape
+     * @param board The board
+     * @param shape The shape
+     * @return The number of legal positions over all rotations
+     */
+    private static long countAnchorsByField(Board board, ShipShape shape) {
+        int size = board.getSize();
+        long count = 0;
+        for (int r = 0; r < shape.getRotationCount(); r++) {
+            ShipShape.Rotation rotation = shape.getRotation(r);
+            for (int y = 0; y + rotation.height <= size; y++) {
+                for (int x = 0; x + rotation.width <= size; x++) {
+                    boolean legal = true;
+                    for (int i = 0; i < rotation.cellX.length && legal; i++)
+                        legal = isFreeAround(board, x + rotation.cellX[i], y + rotation.cellY[i]);
+                    if (legal)
+                        count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Checks a field and its surrounding fields for ships
+     * @param board The board
+     * @param x The x coordinate of the field
+     * @param y The y coordinate of the field
+     * @return Whether none of the fields holds a ship
+     */
+    private static boolean isFreeAround(Board board, int x, int y) {
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                int nx = x + dx;
+                int ny = y + dy;
+                if (nx >= 0 && ny >= 0 && nx < board.getSize() && ny < board.getSize()) {
+                    char field = board.getField(nx, ny);
+                    if (field == Board.SHIP || field == Board.HIT)
+                        return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Counts the placements of the remaining ships per field, placement by
+     * placement. Like PlacementDensity.count, every shape is counted once.
+     * @param board The board
+     * @return The counters, one per field
+     */
+    private static int[] densityByField(Board board) {
+        int size = board.getSize();
+        BitMask blocked = board.visibleBlockedCells();
+        int[] counts = new int[size * size];
+        HashMap<ShipShape, Integer> weights = new HashMap<ShipShape, Integer>();
+        for (ShipShape shape : board.getRemainingShipShapes())
+            weights.merge(shape, 1, Integer::sum);
+        for (Map.Entry<ShipShape, Integer> entry : weights.entrySet()) {
+            ShipShape shape = entry.getKey();
+            int weight = entry.getValue();
+            int rotations = shape.getCellCount() == 1 ? 1 : shape.getRotationCount();
+            for (int r = 0; r < rotations; r++) {
+                ShipShape.Rotation rotation = shape.getRotation(r);
+                for (int y = 0; y + rotation.height <= size; y++) {
+                    for (int x = 0; x + rotation.width <= size; x++) {
+                        boolean legal = true;
+                        for (int i = 0; i < rotation.cellX.length && legal; i++)
+                            legal = !blocked.get((y + rotation.cellY[i]) * size + x + rotation.cellX[i]);
+                        if (!legal)
+                            continue;
+                        for (int i = 0; i < rotation.cellX.length; i++)
+                            counts[(y + rotation.cellY[i]) * size + x + rotation.cellX[i]] += weight;
+                    }
+                }
+            }
+        }
+        return counts;
+    }
+}
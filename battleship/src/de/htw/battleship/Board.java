@@ -1,7 +1,12 @@
 package de.htw.battleship;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Holds the state of one players board
@@ -24,12 +29,68 @@ public class Board {
 
     public static final int BOARD_SIZE = 10;
 
-    private static final int[] shipLengths = new int[]{5,4,3,3,2,2};
-
-    private final char[][] fields = new char[BOARD_SIZE][BOARD_SIZE];
+    private final int size;
+    private final char[][] fields;
+    private final ShipShape[] shapes;
+    /**
+     * The fields holding a ship (hit or not) and the HIT fields as bit masks,
+     * kept up to date by setField, so placements and sunk ships can be
+     * checked with a few mask operations per row
+     */
+    private final BitMask shipCells;
+    private final BitMask hitCells;
+    /**
+     * The fields that have been shot at (HIT or MISSED_SHOT)
+     */
+    private final BitMask shotCells;
+    /**
+     * How often the opponent shoots at each field (index y * size + x), or
+     * null to place the ships uniformly at random
+     */
+    private int[] placementHeat = null;
+    /**
+     * All ships of the board, sunk or not. The Ship objects are reused by reset.
+     */
+    private final Ship[] fleet;
     private final ArrayList<Ship> ships;
     private Vector2d lastMove = new Vector2d(-1, -1);
 
+    /**
+     * Number of ints per shot on the undo stack: x, y, previous field value,
+     * previous last move (x, y) and the index of the ship sunk by the shot (or -1)
+     */
+    private static final int UNDO_RECORD_SIZE = 6;
+    private int[] undoStack = new int[UNDO_RECORD_SIZE * 16];
+    private int undoSize = 0;
+    private final ArrayList<Ship> sunkShips = new ArrayList<Ship>();
+
+    /**
+     * Zobrist hash of the fields, updated with every change of a field
+     */
+    private long hash = 0;
+    /**
+     * Zobrist hash of what the opponent can see: the misses, the hits and
+     * which hits belong to sunk ships. Boards with different ship positions
+     * behind the same shots share it, so it is the key for memoized moves.
+     */
+    private long visibleHash = 0;
+    private static final int VISIBLE_MISS = 1;
+    private static final int VISIBLE_HIT = 2;
+    private static final int VISIBLE_SUNK = 3;
+
+    /**
+     * The number of random positions tried for a ship before the legal positions are counted
+     */
+    private static final int RANDOM_PLACEMENT_ATTEMPTS = 64;
+    /**
+     * The number of times the whole fleet is placed before it counts as not fitting on the board
+     */
+    private static final int FLEET_PLACEMENT_ATTEMPTS = 100;
+    /**
+     * The number of legal random positions compared when ships are placed away from hot fields
+     */
+    private static final int BIASED_PLACEMENT_CANDIDATES = 8;
+
     /**
      * Parses the ships from the saved string into Ships and returns an ArrayList
      * containing them
@@ -41,14 +102,24 @@ public class Board {
         String[] sBoardsArray = savedBoards.split(";");
         for (String sBoard :
                 sBoardsArray) {
-            String[] attributes = sBoard.split(",");
-            Ship sShip = new Ship(Integer.parseInt(attributes[0]), Integer.parseInt(attributes[1]),
-                                Integer.parseInt(attributes[2]), Boolean.parseBoolean(attributes[3]));
-            savedShips.add(sShip);
+            // A board without remaining ships exports an empty ship list
+            if (sBoard.isEmpty())
+                continue;
+            savedShips.add(Ship.parse(sBoard));
         }
         return savedShips;
     }
 
+    /**
+     * Restores a board from the output of exportAsString
+     * @param exported The exported string (fields and ships on separate lines)
+     * @return The restored board
+     */
+    public static Board fromExportedString(String exported) {
+        String[] lines = exported.split("\n", -1);
+        return new Board(lines[0], stringToShips(lines.length > 1 ? lines[1] : ""));
+    }
+
     /**
      * "Shoots" the given coordinates and checks whether the shot resulted
      * in a HIT, a MISSED_SHOT or even in a sunk ship.
@@ -60,21 +131,167 @@ public class Board {
         int y = coordinates.y;
         if (fields[x][y] == HIT)
             return 0;
-        this.lastMove = new Vector2d(x, y);
+        this.lastMove.x = x;
+        this.lastMove.y = y;
         boolean hit = fields[x][y] == SHIP;
         if (!hit) {
-            fields[x][y] = MISSED_SHOT;
+            setField(x, y, MISSED_SHOT);
             return 0;
         }
-        fields[x][y] = HIT;
-        for (Ship ship :
-                ships) {
-            if (isShipSunk(ship)) {
-                ships.remove(ship);
-                return 2;
+        setField(x, y, HIT);
+        int sunkIndex = findSunkShip();
+        if (sunkIndex == -1)
+            return 1;
+        toggleSunk(ships.remove(sunkIndex));
+        return 2;
+    }
+
+    /**
+     * Shoots several fields at once, e.g. a salvo of one shot per surviving
+     * ship. The fields are applied in one pass; a field that appears twice
+     * or has been shot at before counts as a miss, like in shoot. Which
+     * ships are sunk is only checked once, after all fields are applied.
+     * @param cells The fields being shot at (index y * size + x)
+     * @param results Receives the result code of every field (0: miss/already
+     *                hit, 1: hit, 2: ship sunk by the last of its fields in the salvo)
+     * @return The number of ships that are not sunk after the salvo
+     */
+    public int shootSalvo(int[] cells, int[] results) {
+        if (results.length < cells.length)
+            throw new IllegalArgumentException("Result array is shorter than the salvo");
+        int hits = 0;
+        for (int i = 0; i < cells.length; i++) {
+            int x = cells[i] % size;
+            int y = cells[i] / size;
+            // The first shot at a field changes it, so a duplicate finds HIT or MISSED_SHOT
+            if (fields[x][y] == SHIP) {
+                setField(x, y, HIT);
+                results[i] = 1;
+                hits++;
+            } else {
+                if (fields[x][y] == EMPTY)
+                    setField(x, y, MISSED_SHOT);
+                results[i] = 0;
             }
+            this.lastMove.x = x;
+            this.lastMove.y = y;
         }
-        return 1;
+        if (hits == 0)
+            return ships.size();
+        // The hits sorted by field (field in the upper, salvo index in the lower half), to find the last hit of a ship
+        long[] hitOrder = new long[hits];
+        for (int i = 0, h = 0; i < cells.length; i++) {
+            if (results[i] == 1)
+                hitOrder[h++] = (long) cells[i] << 32 | i;
+        }
+        Arrays.sort(hitOrder);
+        for (int s = ships.size() - 1; s >= 0; s--) {
+            Ship ship = ships.get(s);
+            if (!isShipSunk(ship))
+                continue;
+            int last = -1;
+            for (int j = 0; j < ship.getShipLength(); j++) {
+                int cell = ship.getCellY(j) * size + ship.getCellX(j);
+                int p = Arrays.binarySearch(hitOrder, (long) cell << 32);
+                if (p < 0)
+                    p = -p - 1;
+                if (p < hitOrder.length && (int) (hitOrder[p] >>> 32) == cell)
+                    last = Math.max(last, (int) hitOrder[p]);
+            }
+            results[last] = 2;
+            toggleSunk(ships.remove(s));
+        }
+        return ships.size();
+    }
+
+    /**
+     * Finds the ship that has been sunk by the last shot among the remaining
+     * ships.
+     * @return The index of the sunk ship in the ships list or -1 if no ship was sunk
+     */
+    private int findSunkShip() {
+        for (int i = 0; i < ships.size(); i++) {
+            if (isShipSunk(ships.get(i)))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Shoots the given coordinates like the shoot method does, but records
+     * everything needed to take the shot back with unmakeShot. Meant for
+     * speculative search, where shots are tried and rolled back many times.
+     * @param x The x coordinate being shot at
+     * @param y The y coordinate being shot at
+     * @return The result code of the shot (0: miss/already hit, 1: hit, 2: ship sunk)
+     */
+    public int makeShot(int x, int y) {
+        if (undoSize + UNDO_RECORD_SIZE > undoStack.length)
+            undoStack = Arrays.copyOf(undoStack, undoStack.length * 2);
+        char previous = fields[x][y];
+        undoStack[undoSize] = x;
+        undoStack[undoSize + 1] = y;
+        undoStack[undoSize + 2] = previous;
+        undoStack[undoSize + 3] = lastMove.x;
+        undoStack[undoSize + 4] = lastMove.y;
+        undoStack[undoSize + 5] = -1;
+        undoSize += UNDO_RECORD_SIZE;
+        if (previous == HIT)
+            return 0;
+        this.lastMove.x = x;
+        this.lastMove.y = y;
+        if (previous != SHIP) {
+            setField(x, y, MISSED_SHOT);
+            return 0;
+        }
+        setField(x, y, HIT);
+        int sunkIndex = findSunkShip();
+        if (sunkIndex == -1)
+            return 1;
+        Ship sunk = ships.remove(sunkIndex);
+        toggleSunk(sunk);
+        sunkShips.add(sunk);
+        undoStack[undoSize - 1] = sunkIndex;
+        return 2;
+    }
+
+    /**
+     * Takes back the last shot made with makeShot, including the field, the
+     * last move and a ship that might have been sunk by it.
+     */
+    public void unmakeShot() {
+        if (undoSize == 0)
+            throw new IllegalStateException("No shot to take back");
+        undoSize -= UNDO_RECORD_SIZE;
+        int x = undoStack[undoSize];
+        int y = undoStack[undoSize + 1];
+        // The ship is raised before its field is reset, so the field leaves the visible hash as a plain hit
+        int sunkIndex = undoStack[undoSize + 5];
+        if (sunkIndex != -1) {
+            Ship raised = sunkShips.remove(sunkShips.size() - 1);
+            toggleSunk(raised);
+            ships.add(sunkIndex, raised);
+        }
+        setField(x, y, (char) undoStack[undoSize + 2]);
+        this.lastMove.x = undoStack[undoSize + 3];
+        this.lastMove.y = undoStack[undoSize + 4];
+    }
+
+    /**
+     * Gets the number of shots made with makeShot that can still be taken back
+     * @return The number of shots on the undo stack
+     */
+    public int getUndoDepth() {
+        return undoSize / UNDO_RECORD_SIZE;
+    }
+
+    /**
+     * Creates an independent copy of this board, e.g. to hand it to another
+     * thread. The undo stack is not copied.
+     * @return A new Board with the same fields, ships and last move
+     */
+    public Board copy() {
+        return new Board(this);
     }
 
     /**
@@ -83,110 +300,489 @@ public class Board {
      * @return Whether the ship is sunk or not
      */
     private boolean isShipSunk(Ship ship) {
-        int right = ship.isHorizontal() ? 1 : 0;
-        int down = ship.isVertical() ? 1 : 0;
-        for (int i = 0; i < ship.getShipLength(); i++) {
-            if (fields[ship.x + i * right][ship.y + i * down] == SHIP) {
+        ShipShape.Rotation rotation = ship.getShape().getRotation(ship.getRotation());
+        for (int r = 0; r < rotation.height; r++) {
+            long cells = rotation.rows[r];
+            if ((hitCells.getBits((ship.y + r) * size + ship.x, rotation.width) & cells) != cells)
                 return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a rotated shape can be placed at the given position
+     * without intersecting or touching any other ship: its halo must not
+     * overlap any ship field, which is one mask operation per row
+     * @param rotation The rotated shape
+     * @param x The x coordinate of the top left corner
+     * @param y The y coordinate of the top left corner
+     * @return Whether the position is legal
+     */
+    private boolean fits(ShipShape.Rotation rotation, int x, int y) {
+        return fits(shipCells, size, size, rotation, x, y);
+    }
+
+    /**
+     * Checks whether a rotated shape can be placed at the given position of
+     * a rectangular area without touching any of its ship fields, e.g. of
+     * one tile of a board (see TiledPlacement)
+     * @param shipCells The ship fields of the area (index y * width + x)
+     * @param width The number of columns of the area
+     * @param height The number of rows of the area
+     * @param rotation The rotated shape
+     * @param x The x coordinate of the top left corner
+     * @param y The y coordinate of the top left corner
+     * @return Whether the position is legal
+     */
+    static boolean fits(BitMask shipCells, int width, int height, ShipShape.Rotation rotation, int x, int y) {
+        if (x < 0 || y < 0 || x + rotation.width > width || y + rotation.height > height)
+            return false;
+        for (int r = 0; r < rotation.haloRows.length; r++) {
+            int row = y - 1 + r;
+            if (row < 0 || row >= height)
+                continue;
+            long halo = rotation.haloRows[r];
+            int from = x - 1;
+            int count = rotation.width + 2;
+            if (from < 0) {
+                halo >>>= 1;
+                from = 0;
+                count--;
             }
+            count = Math.min(count, width - from);
+            if ((shipCells.getBits(row * width + from, count) & halo) != 0)
+                return false;
         }
         return true;
     }
 
     /**
-     * Checks if the field at the given coordinates or any of its surrounding
-     * fields contain a SHIP
-     * @param x The x coordinate of the field being checked
-     * @param y The y coordinate of the field being checked
-     * @return Whether the field or any of its surrounding fields contain a ship
-     */
-    private boolean checkSurroundings(int x, int y) {
-        int left = x == 0 ? 0 : 1;
-        int right = x >= BOARD_SIZE - 1 ? 0 : 1;
-        int up = y == 0 ? 0 : 1;
-        int down = y >= BOARD_SIZE - 1 ? 0 : 1;
-        return fields[x - left][y - up] == SHIP ||
-                fields[x - left][y] == SHIP ||
-                fields[x - left][y + down] == SHIP ||
-                fields[x][y - up] == SHIP ||
-                fields[x][y] == SHIP ||
-                fields[x][y + down] == SHIP ||
-                fields[x + right][y - up] == SHIP ||
-                fields[x + right][y] == SHIP ||
-                fields[x + right][y + down] == SHIP;
-    }
-
-    /**
-     * Generates a new ship at a random position, with a random orientation
-     * of the given ship length, that does not intersect or touch any other
-     * ship.
-     * @param shipLength The desired length of the new ship
-     * @return A Ship object representing the new ship
-     */
-    private Ship generateShip(int shipLength) {
-        Random r = new Random();
-        boolean horizontal;
-        while (true) {
-            horizontal = r.nextBoolean();
-            Vector2d position = new Vector2d(r.nextInt(BOARD_SIZE - (horizontal ? shipLength : 0)),
-                    r.nextInt(BOARD_SIZE - (!horizontal ? shipLength : 0)));
-            boolean collides = false;
-            for (int i = 0; i < shipLength; i++) {
-                if (checkSurroundings(position.x + (horizontal ? i : 0),
-                        position.y + (!horizontal ? i : 0))) {
-                    collides = true;
-                    break;
+     * Generates a new ship of the given shape at a random position and with
+     * a random rotation, that does not intersect or touch any other ship.
+     * @param ship The Ship object the new ship is written into
+     * @param shape The shape of the new ship
+     */
+    private void generateShip(Ship ship, ShipShape shape) {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        int candidates = 0;
+        long bestHeat = Long.MAX_VALUE;
+        int bestRotation = -1, bestX = 0, bestY = 0;
+        for (int attempt = 0; attempt < RANDOM_PLACEMENT_ATTEMPTS; attempt++) {
+            int rotation = r.nextInt(shape.getRotationCount());
+            ShipShape.Rotation rotated = shape.getRotation(rotation);
+            if (rotated.width > size || rotated.height > size)
+                continue;
+            int x = r.nextInt(size - rotated.width + 1);
+            int y = r.nextInt(size - rotated.height + 1);
+            if (!fits(rotated, x, y))
+                continue;
+            if (placementHeat == null) {
+                placeShip(ship, shape, rotation, x, y);
+                return;
+            }
+            // Keep the coldest of a few random positions, so the placement stays unpredictable
+            long heat = heatOf(rotated, x, y);
+            if (heat < bestHeat) {
+                bestHeat = heat;
+                bestRotation = rotation;
+                bestX = x;
+                bestY = y;
+            }
+            if (++candidates == BIASED_PLACEMENT_CANDIDATES)
+                break;
+        }
+        if (bestRotation != -1) {
+            placeShip(ship, shape, bestRotation, bestX, bestY);
+            return;
+        }
+        // The board is crowded: choose one of all legal positions, so the time is bounded
+        BitMask blocked = dilate(shipCells);
+        BitMask[] anchors = new BitMask[shape.getRotationCount()];
+        int legal = 0;
+        for (int rotation = 0; rotation < anchors.length; rotation++) {
+            anchors[rotation] = legalAnchors(shape.getRotation(rotation), blocked);
+            legal += anchors[rotation].cardinality();
+        }
+        if (legal == 0)
+            throw new IllegalStateException("The fleet does not fit on the board");
+        int chosen = r.nextInt(legal);
+        for (int rotation = 0; rotation < anchors.length; rotation++) {
+            int count = anchors[rotation].cardinality();
+            if (chosen < count) {
+                int anchor = anchors[rotation].selectSetBit(chosen);
+                placeShip(ship, shape, rotation, anchor % size, anchor / size);
+                return;
+            }
+            chosen -= count;
+        }
+    }
+
+    /**
+     * Computes the fields of a mask and all fields around them, with shifts
+     * of the whole mask: first one column to both sides, then one row up and down.
+     * @param cells The fields
+     * @return A new mask with the fields and their neighbours
+     */
+    BitMask dilate(BitMask cells) {
+        BitMask horizontal = spreadHorizontally(cells);
+        BitMask result = new BitMask(horizontal);
+        result.orShifted(horizontal, size);
+        result.orShifted(horizontal, -size);
+        return result;
+    }
+
+    /**
+     * Computes the fields of a mask and the fields above, below, left and
+     * right of them (without the diagonal neighbours dilate adds)
+     * @param cells The fields
+     * @return A new mask with the fields and their direct neighbours
+     */
+    BitMask adjacent(BitMask cells) {
+        BitMask result = spreadHorizontally(cells);
+        result.orShifted(cells, size);
+        result.orShifted(cells, -size);
+        return result;
+    }
+
+    /**
+     * Computes the fields of a mask and the fields left and right of them
+     * @param cells The fields
+     * @return A new mask with the fields and their neighbours in the same row
+     */
+    private BitMask spreadHorizontally(BitMask cells) {
+        BitMask firstColumn = new BitMask(size * size);
+        BitMask lastColumn = new BitMask(size * size);
+        for (int y = 0; y < size; y++) {
+            firstColumn.set(y * size);
+            lastColumn.set(y * size + size - 1);
+        }
+        // A field in the last column must not spill into the first column of the next row and vice versa
+        BitMask horizontal = new BitMask(cells);
+        BitMask moved = new BitMask(cells);
+        moved.andNot(lastColumn);
+        horizontal.orShifted(moved, 1);
+        moved.copyFrom(cells);
+        moved.andNot(firstColumn);
+        horizontal.orShifted(moved, -1);
+        return horizontal;
+    }
+
+    /**
+     * Computes all top left corners at which a rotated shape fits on the
+     * board without covering a blocked field. Starting with all corners
+     * that keep the shape inside the board, the blocked fields are shifted
+     * onto the corners once per field of the shape.
+     * @param rotation The rotated shape
+     * @param blocked The fields the shape must not cover
+     * @return A mask with the legal top left corners
+     */
+    BitMask legalAnchors(ShipShape.Rotation rotation, BitMask blocked) {
+        BitMask anchors = new BitMask(size * size);
+        for (int y = 0; y + rotation.height <= size; y++)
+            anchors.set(y * size, y * size + size - rotation.width + 1);
+        for (int i = 0; i < rotation.cellX.length; i++)
+            anchors.andNotShifted(blocked, -(rotation.cellY[i] * size + rotation.cellX[i]));
+        return anchors;
+    }
+
+    /**
+     * Computes the fields no remaining ship can cover, from what the
+     * opponent can see: the misses and the fields of sunk ships and around them
+     * @return A new mask with the blocked fields
+     */
+    BitMask visibleBlockedCells() {
+        BitMask sunk = new BitMask(hitCells);
+        for (Ship ship : ships) {
+            for (int j = 0; j < ship.getShipLength(); j++)
+                sunk.clear(ship.getCellY(j) * size + ship.getCellX(j));
+        }
+        BitMask blocked = dilate(sunk);
+        BitMask misses = new BitMask(shotCells);
+        misses.andNot(hitCells);
+        blocked.or(misses);
+        return blocked;
+    }
+
+    /**
+     * Computes the hit fields of the ships that are not sunk yet, where the
+     * opponent keeps shooting to sink them
+     * @return A new mask with the hit fields of the remaining ships
+     */
+    BitMask openHitCells() {
+        BitMask open = new BitMask(size * size);
+        for (Ship ship : ships) {
+            for (int j = 0; j < ship.getShipLength(); j++)
+                open.set(ship.getCellY(j) * size + ship.getCellX(j));
+        }
+        open.and(hitCells);
+        return open;
+    }
+
+    /**
+     * Getter for the shotCells attribute
+     * @return A copy of the mask of the fields that have been shot at
+     */
+    BitMask getShotCells() {
+        return new BitMask(shotCells);
+    }
+
+    /**
+     * Sums up how often the opponent shoots at the fields of a rotated shape
+     * @param rotation The rotated shape
+     * @param x The x coordinate of the top left corner
+     * @param y The y coordinate of the top left corner
+     * @return The sum of the placement heat of the fields
+     */
+    private long heatOf(ShipShape.Rotation rotation, int x, int y) {
+        long heat = 0;
+        for (int i = 0; i < rotation.cellX.length; i++)
+            heat += placementHeat[(y + rotation.cellY[i]) * size + x + rotation.cellX[i]];
+        return heat;
+    }
+
+    /**
+     * Writes a ship into the Ship object, adds it to the remaining ships
+     * and puts it on the fields
+     * @param ship The Ship object
+     * @param shape The shape of the ship
+     * @param rotation The index of the rotation of the shape
+     * @param x The x coordinate of the top left corner
+     * @param y The y coordinate of the top left corner
+     */
+    private void placeShip(Ship ship, ShipShape shape, int rotation, int x, int y) {
+        ship.set(x, y, shape, rotation);
+        this.ships.add(ship);
+        for (int j = 0; j < ship.getShipLength(); j++)
+            setField(ship.getCellX(j), ship.getCellY(j), SHIP);
+    }
+
+    /**
+     * Generates all ships of the fleet and places them on the (empty) fields.
+     * Bent ships can block each other so that a later ship has no legal
+     * position left, then the fleet is placed again from the start.
+     * Very large fleets are placed tile by tile in parallel (see TiledPlacement).
+     */
+    private void placeFleet() {
+        boolean tiled = placementHeat == null && TiledPlacement.isWorthwhile(size, fleet.length);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                if (tiled)
+                    placeFleetTiled();
+                else
+                    for (int i = 0; i < fleet.length; i++)
+                        generateShip(fleet[i], shapes[i]);
+                return;
+            } catch (IllegalStateException e) {
+                if (attempt == FLEET_PLACEMENT_ATTEMPTS)
+                    throw e;
+                for (Ship ship : ships) {
+                    for (int j = 0; j < ship.getShipLength(); j++)
+                        setField(ship.getCellX(j), ship.getCellY(j), EMPTY);
                 }
+                ships.clear();
             }
-            if (collides)
-                continue;
-            Ship newShip = new Ship(position, shipLength, horizontal);
-            this.ships.add(newShip);
-            return newShip;
         }
     }
 
+    /**
+     * Places the fleet with the tiles of a TiledPlacement. The ships the
+     * tiles left out are then placed one by one on the whole board, which
+     * checks them against the ships of all tiles: first the ones crossing
+     * tile borders, then the ones that did not fit into their tile.
+     */
+    private void placeFleetTiled() {
+        TiledPlacement placement = new TiledPlacement(size, shapes);
+        placement.place();
+        for (int i = 0; i < fleet.length; i++) {
+            int anchor = placement.getAnchor(i);
+            if (anchor != -1)
+                placeShip(fleet[i], shapes[i], placement.getRotation(i), anchor % size, anchor / size);
+        }
+        for (int i = 0; i < fleet.length; i++) {
+            if (placement.getAnchor(i) == -1 && !(placement.crossesBorder(i) && placeAcrossBorder(i, placement)))
+                generateShip(fleet[i], shapes[i]);
+        }
+    }
+
+    /**
+     * Places a ship at a random position crossing a tile border
+     * @param index The index of the ship in the fleet
+     * @param placement The placement of the tiles
+     * @return Whether a legal position was found
+     */
+    private boolean placeAcrossBorder(int index, TiledPlacement placement) {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        ShipShape shape = shapes[index];
+        for (int attempt = 0; attempt < RANDOM_PLACEMENT_ATTEMPTS; attempt++) {
+            int rotation = r.nextInt(shape.getRotationCount());
+            ShipShape.Rotation rotated = shape.getRotation(rotation);
+            int anchor = placement.randomBorderAnchor(rotated, r);
+            if (anchor != -1 && fits(rotated, anchor % size, anchor / size)) {
+                placeShip(fleet[index], shape, rotation, anchor % size, anchor / size);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves one ship of an unplayed board to a new random position that
+     * does not intersect or touch any other ship, e.g. to search for boards
+     * with a special placement (see HardBoardGenerator)
+     * @param index The index of the ship in the fleet
+     */
+    void relocateShip(int index) {
+        Ship ship = fleet[index];
+        if (!ships.contains(ship))
+            throw new IllegalStateException("Only ships that are not sunk can be moved");
+        for (int j = 0; j < ship.getShipLength(); j++)
+            setField(ship.getCellX(j), ship.getCellY(j), EMPTY);
+        ships.remove(ship);
+        generateShip(ship, shapes[index]);
+    }
+
+    /**
+     * Turns this board into a newly generated board of the same configuration
+     * without allocating new fields, lists or ships. Meant for simulations
+     * that play millions of games with the same objects.
+     */
+    public void reset() {
+        for (int x = 0; x < size; x++)
+            Arrays.fill(fields[x], EMPTY);
+        this.shipCells.clearAll();
+        this.hitCells.clearAll();
+        this.shotCells.clearAll();
+        this.hash = 0;
+        this.visibleHash = 0;
+        this.ships.clear();
+        this.sunkShips.clear();
+        this.undoSize = 0;
+        this.deactivateLastMove();
+        placeFleet();
+    }
+
     /**
      * "Deactivates" the last move by replacing it with a Vector2d containing
      * impossible values (values that can not be generated elsewhere in code)
      */
     public void deactivateLastMove() {
-        this.lastMove = new Vector2d(-1, -1);
+        this.lastMove.x = -1;
+        this.lastMove.y = -1;
     }
 
     /**
-     * Create a new Board and generate ships
+     * Create a new Board with the default configuration and generate ships
      */
     public Board() {
-        for (int i = 0; i < BOARD_SIZE; i++) {
-            for (int j = 0; j < BOARD_SIZE; j++) {
+        this(BoardConfiguration.DEFAULT);
+    }
+
+    /**
+     * Create a new Board of the given configuration and generate ships
+     * @param configuration The size and fleet of the board
+     */
+    public Board(BoardConfiguration configuration) {
+        this(configuration, null);
+    }
+
+    /**
+     * Create a new Board of the given configuration and generate ships that
+     * avoid the fields the opponent usually shoots at (see TargetingModel)
+     * @param configuration The size and fleet of the board
+     * @param placementHeat How often the opponent shoots at each field
+     *                      (index y * size + x) or null for a uniform placement
+     */
+    public Board(BoardConfiguration configuration, int[] placementHeat) {
+        if (placementHeat != null && placementHeat.length != configuration.getSize() * configuration.getSize())
+            throw new IllegalArgumentException("Heat does not match the board size");
+        this.placementHeat = placementHeat;
+        this.size = configuration.getSize();
+        this.fields = new char[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
                 fields[i][j] = EMPTY;
             }
         }
-        this.ships = new ArrayList<Ship>();
-        for (int shipLength : shipLengths) {
-            Ship ship = generateShip(shipLength);
-            boolean horizontal = ship.isHorizontal();
-            boolean vertical = ship.isVertical();
-            for (int j = 0; j < shipLength; j++) {
-                fields[ship.x + (horizontal ? j : 0)][ship.y + (vertical ? j : 0)] = SHIP;
-            }
-        }
+        this.shipCells = new BitMask(size * size);
+        this.hitCells = new BitMask(size * size);
+        this.shotCells = new BitMask(size * size);
+        this.shapes = configuration.getShapes();
+        this.fleet = new Ship[shapes.length];
+        for (int i = 0; i < fleet.length; i++)
+            fleet[i] = new Ship(-1, -1);
+        this.ships = new ArrayList<Ship>(fleet.length);
+        placeFleet();
     }
 
     /**
      * Create a Board and add its ships from an exported string.
+     * The board is square, so its size follows from the length of the string.
+     * The saved ships make up the fleet used by reset.
      * @param savedBoard The saved string representation of the board object
      * @param savedShips An ArrayList containing the saved ships
      */
     public Board(String savedBoard, ArrayList<Ship> savedShips) {
-        for (int y = 0; y < BOARD_SIZE; y++) {
-            for (int x = 0; x < BOARD_SIZE; x++) {
-                int index = y * BOARD_SIZE + x;
-                fields[x][y] = savedBoard.charAt(index);
+        this((int) Math.round(Math.sqrt(savedBoard.length())), savedShips);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int index = y * size + x;
+                setField(x, y, savedBoard.charAt(index));
             }
         }
+        markRestoredSunkShips();
+    }
+
+    /**
+     * Create an empty Board with saved ships, whose fields are set afterwards
+     * (see the constructor above and readFrom). The saved ships make up the
+     * fleet used by reset.
+     * @param size The width and height of the board
+     * @param savedShips An ArrayList containing the saved ships
+     */
+    private Board(int size, ArrayList<Ship> savedShips) {
+        this.size = size;
+        this.fields = new char[size][size];
+        for (int x = 0; x < size; x++)
+            Arrays.fill(fields[x], EMPTY);
+        this.shipCells = new BitMask(size * size);
+        this.hitCells = new BitMask(size * size);
+        this.shotCells = new BitMask(size * size);
         this.ships = savedShips;
+        this.fleet = savedShips.toArray(new Ship[0]);
+        this.shapes = new ShipShape[fleet.length];
+        for (int i = 0; i < fleet.length; i++)
+            shapes[i] = fleet[i].getShape();
+    }
+
+    /**
+     * Create a copy of another board
+     * @param other The board being copied
+     */
+    private Board(Board other) {
+        this.size = other.size;
+        this.fields = new char[size][];
+        for (int x = 0; x < size; x++)
+            this.fields[x] = other.fields[x].clone();
+        this.shapes = other.shapes;
+        this.placementHeat = other.placementHeat;
+        this.shipCells = new BitMask(other.shipCells);
+        this.hitCells = new BitMask(other.hitCells);
+        this.shotCells = new BitMask(other.shotCells);
+        // Ships are reused by reset, so the copy needs its own ones
+        this.fleet = new Ship[other.fleet.length];
+        IdentityHashMap<Ship, Ship> copies = new IdentityHashMap<Ship, Ship>();
+        for (int i = 0; i < fleet.length; i++) {
+            Ship ship = other.fleet[i];
+            fleet[i] = ship.getShape() == null ? new Ship(ship.x, ship.y) :
+                    new Ship(ship.x, ship.y, ship.getShape(), ship.getRotation());
+            copies.put(ship, fleet[i]);
+        }
+        this.ships = new ArrayList<Ship>(other.ships.size());
+        for (Ship ship : other.ships)
+            this.ships.add(copies.get(ship));
+        this.lastMove = new Vector2d(other.lastMove.x, other.lastMove.y);
+        this.hash = other.hash;
+        this.visibleHash = other.visibleHash;
     }
 
     /**
@@ -195,35 +791,95 @@ public class Board {
      * @param hideShips if TRUE, replaces ships by empty fields in output
      */
     public void print(boolean hideShips) {
-        /* print column headers A - J */
-        System.out.print("# ");
-        for (int x = 0; x < fields[0].length; x++) {
-            char column = (char) (x + 65);
-            System.out.print(" " + column);
-        }
-        System.out.println();
+        System.out.print(render(hideShips));
+    }
+
+    /**
+     * Renders the board into the string printed by print, e.g. to write it
+     * on another thread (see ConsoleRenderer)
+     *
+     * @param hideShips if TRUE, replaces ships by empty fields in output
+     * @return The rendered board, one line per row
+     */
+    public String render(boolean hideShips) {
+        StringBuilder output = new StringBuilder(size * size * 8);
+        appendColumnHeaders(output, size);
 
         for (int y = 0; y < fields.length; y++) {
-            /* print row number */
-            int rowNumber = y + 1;
-            System.out.print(rowNumber + " ");
-            if (rowNumber < 10) System.out.print(" ");
+            appendRowNumber(output, y);
 
             /* print row */
             for (int x = 0; x < fields[y].length; x++) {
-                char output = fields[x][y];
-                if (output == SHIP && hideShips)
-                    output = EMPTY;
-                System.out.print(((lastMove.x == x && lastMove.y == y) ? ANSI_GREEN :
-                        output == SHIP ? ANSI_BLUE :
-                        output == HIT ? ANSI_RED :
-                        output == MISSED_SHOT ? ANSI_YELLOW : "")
-                        + output
-                        + (output != EMPTY ? ANSI_RESET : "")
-                        + " ");
+                char field = fields[x][y];
+                if (field == SHIP && hideShips)
+                    field = EMPTY;
+                output.append((lastMove.x == x && lastMove.y == y) ? ANSI_GREEN :
+                        field == SHIP ? ANSI_BLUE :
+                        field == HIT ? ANSI_RED :
+                        field == MISSED_SHOT ? ANSI_YELLOW : "")
+                        .append(field)
+                        .append(field != EMPTY ? ANSI_RESET : "")
+                        .append(' ');
+            }
+            output.append(System.lineSeparator());
+        }
+        return output.toString();
+    }
+
+    /**
+     * Prints a heatmap in the same layout as a board to System.out. Every
+     * field shows its value scaled to a digit from 0 (lowest value) to
+     * 9 (highest value), colored from blue over yellow to red.
+     *
+     * @param values The values of the fields, indexed by y * size + x
+     * @param size The width and height of the heatmap
+     */
+    public static void printHeatmap(double[] values, int size) {
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        for (double value : values) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        double range = max > min ? max - min : 1;
+
+        StringBuilder output = new StringBuilder();
+        appendColumnHeaders(output, size);
+        for (int y = 0; y < size; y++) {
+            appendRowNumber(output, y);
+            for (int x = 0; x < size; x++) {
+                int digit = (int) Math.round((values[y * size + x] - min) / range * 9);
+                output.append(digit < 4 ? ANSI_BLUE : digit < 7 ? ANSI_YELLOW : ANSI_RED)
+                        .append(digit).append(ANSI_RESET).append(' ');
             }
-            System.out.println();
+            output.append(System.lineSeparator());
+        }
+        System.out.print(output);
+    }
+
+    /**
+     * Appends the column headers (A - J on a default board)
+     * @param output The output being built
+     * @param size The number of columns
+     */
+    private static void appendColumnHeaders(StringBuilder output, int size) {
+        output.append("# ");
+        for (int x = 0; x < size; x++) {
+            char column = (char) (x + 65);
+            output.append(' ').append(column);
         }
+        output.append(System.lineSeparator());
+    }
+
+    /**
+     * Appends the number of a row, padded to the width of the row numbers
+     * @param output The output being built
+     * @param y The y coordinate of the row
+     */
+    private static void appendRowNumber(StringBuilder output, int y) {
+        int rowNumber = y + 1;
+        output.append(rowNumber).append(' ');
+        if (rowNumber < 10) output.append(' ');
     }
 
     /**
@@ -233,8 +889,8 @@ public class Board {
      */
     public String exportAsString() {
         StringBuilder builder = new StringBuilder();
-        for (int y = 0; y < BOARD_SIZE; y++) {
-            for (int x = 0; x < BOARD_SIZE; x++) {
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
                 builder.append(fields[x][y]);
             }
         }
@@ -243,6 +899,104 @@ public class Board {
         return builder.toString();
     }
 
+    /**
+     * Writes the board to a stream, in the same order as exportAsString but
+     * without building a string of the whole board: the size, the remaining
+     * ships and then the fields row by row, run-length encoded. A run is one
+     * byte (value in the upper 2 bits, length - 1 in the lower 6 bits) or,
+     * for runs of 64 fields and more, the byte with the lower bits set to
+     * 63 followed by the length (int). A buffered stream thus writes the
+     * board in chunks of its buffer size.
+     * @param out The stream, e.g. a DataOutputStream on a BufferedOutputStream
+     * @throws IOException If the stream can not be written
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        out.writeInt(ships.size());
+        for (Ship ship : ships)
+            out.writeUTF(ship.toString());
+        for (int y = 0; y < size; y++) {
+            int x = 0;
+            while (x < size) {
+                char value = fields[x][y];
+                int end = x + 1;
+                if (value == EMPTY) {
+                    // Empty fields are skipped with the masks, 64 at a time
+                    end = nextOccupiedField(y * size + end, (y + 1) * size) - y * size;
+                } else {
+                    while (end < size && fields[end][y] == value)
+                        end++;
+                }
+                int code = value == SHIP ? 1 : value == HIT ? 2 : value == MISSED_SHOT ? 3 : 0;
+                int length = end - x;
+                if (length < 64) {
+                    out.writeByte(code << 6 | (length - 1));
+                } else {
+                    out.writeByte(code << 6 | 63);
+                    out.writeInt(length);
+                }
+                x = end;
+            }
+        }
+    }
+
+    /**
+     * Finds the next field that holds a ship or has been shot at
+     * @param from The index (y * size + x) to start searching at
+     * @param to The index to stop searching at
+     * @return The index of the field or to if all fields up to there are EMPTY
+     */
+    private int nextOccupiedField(int from, int to) {
+        if (from >= to)
+            return to;
+        long[] ship = shipCells.words();
+        long[] shot = shotCells.words();
+        int i = from >>> 6;
+        long word = (ship[i] | shot[i]) & (-1L << from);
+        while (word == 0) {
+            if (++i << 6 >= to)
+                return to;
+            word = ship[i] | shot[i];
+        }
+        return Math.min(to, (i << 6) + Long.numberOfTrailingZeros(word));
+    }
+
+    /**
+     * Reads a board written by writeTo. The fields are set run by run, so
+     * besides the board only the buffer of the stream is held in memory.
+     * @param in The stream, e.g. a DataInputStream on a BufferedInputStream
+     * @return The restored board
+     * @throws IOException If the stream can not be read or does not contain a board
+     */
+    public static Board readFrom(DataInput in) throws IOException {
+        int size = in.readInt();
+        if (size <= 0 || (long) size * size > Integer.MAX_VALUE)
+            throw new IOException("Ungültige Brettgröße: " + size);
+        int nShips = in.readInt();
+        ArrayList<Ship> savedShips = new ArrayList<Ship>(Math.max(0, Math.min(nShips, size * size)));
+        for (int i = 0; i < nShips; i++)
+            savedShips.add(Ship.parse(in.readUTF()));
+        Board board = new Board(size, savedShips);
+        char[] values = {EMPTY, SHIP, HIT, MISSED_SHOT};
+        for (int y = 0; y < size; y++) {
+            int x = 0;
+            while (x < size) {
+                int run = in.readUnsignedByte();
+                char value = values[run >>> 6];
+                int length = (run & 63) == 63 ? in.readInt() : (run & 63) + 1;
+                if (length <= 0 || length > size - x)
+                    throw new IOException("Ungültige Lauflänge in Zeile " + (y + 1));
+                if (value != EMPTY) {
+                    for (int i = x; i < x + length; i++)
+                        board.setField(i, y, value);
+                }
+                x += length;
+            }
+        }
+        board.markRestoredSunkShips();
+        return board;
+    }
+
     /**
      * Exports the ships as one string.
      * @return A string containing the ship attributes
@@ -263,11 +1017,197 @@ public class Board {
      * @return FALSE if at least one ship is remaining. TRUE otherwise.
      */
     public boolean isWholeFleetSunk() {
-        for (int y = 0; y < BOARD_SIZE; y++) {
-            for (int x = 0; x < BOARD_SIZE; x++) {
-                if (fields[x][y] == SHIP)
-                    return false;
-            }
+        // Every field holding a ship has to be hit, 64 fields are compared at once
+        return hitCells.containsAll(shipCells);
+    }
+
+    /**
+     * Sets the value of the field at coordinates x, y and updates the hash
+     * and the bit masks of the board accordingly
+     * @param x x coordinate on the board.
+     * @param y y coordinate on the board.
+     * @param value The new value of the field
+     */
+    private void setField(int x, int y, char value) {
+        int index = y * size + x;
+        hash ^= zobristKey(index, fields[x][y]) ^ zobristKey(index, value);
+        visibleHash ^= visibleKey(index, fields[x][y]) ^ visibleKey(index, value);
+        fields[x][y] = value;
+        if (value == SHIP || value == HIT)
+            shipCells.set(index);
+        else
+            shipCells.clear(index);
+        if (value == HIT)
+            hitCells.set(index);
+        else
+            hitCells.clear(index);
+        if (value == HIT || value == MISSED_SHOT)
+            shotCells.set(index);
+        else
+            shotCells.clear(index);
+    }
+
+    /**
+     * Calculates the Zobrist key of a field value at a given field. Keys are
+     * derived from the field index with the SplitMix64 finalizer, so boards
+     * of any size share the same keys without a lookup table.
+     * EMPTY fields have the key 0, so an empty board has the hash 0.
+     * @param index The index of the field (y * size + x)
+     * @param value The value of the field
+     * @return The key of the value at the given field
+     */
+    static long zobristKey(int index, char value) {
+        if (value == EMPTY || value == 0)
+            return 0;
+        long z = (index * 4L + (value == SHIP ? 1 : value == HIT ? 2 : 3)) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Calculates the key of a field value in the visible hash. A hit has
+     * the key of a hit until its ship is sunk (see toggleSunk).
+     * @param index The index of the field (y * size + x)
+     * @param value The value of the field
+     * @return The key of the value, 0 for fields that look empty
+     */
+    private static long visibleKey(int index, char value) {
+        if (value == HIT)
+            return visibleStateKey(index, VISIBLE_HIT);
+        if (value == MISSED_SHOT)
+            return visibleStateKey(index, VISIBLE_MISS);
+        return 0;
+    }
+
+    /**
+     * Calculates the random key of a visible field state, like zobristKey
+     * but with its own constant, so the two hashes do not share keys
+     * @param index The index of the field (y * size + x)
+     * @param state VISIBLE_MISS, VISIBLE_HIT or VISIBLE_SUNK
+     * @return The key of the state at the given field
+     */
+    private static long visibleStateKey(int index, int state) {
+        long z = (index * 4L + state) * 0xC2B2AE3D27D4EB4FL + 0x165667B19E3779F9L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Switches the fields of a ship between hit and sunk in the visible
+     * hash, when the ship is sunk or raised again (see unmakeShot)
+     * @param ship The ship, all its fields are HIT
+     */
+    private void toggleSunk(Ship ship) {
+        for (int j = 0; j < ship.getShipLength(); j++) {
+            int index = ship.getCellY(j) * size + ship.getCellX(j);
+            visibleHash ^= visibleStateKey(index, VISIBLE_HIT) ^ visibleStateKey(index, VISIBLE_SUNK);
+        }
+    }
+
+    /**
+     * Marks the hits of a restored board that are not covered by any of the
+     * remaining ships as sunk in the visible hash, restored boards only know
+     * the ships that are not sunk
+     */
+    private void markRestoredSunkShips() {
+        BitMask sunk = new BitMask(hitCells);
+        for (Ship ship : ships) {
+            for (int j = 0; j < ship.getShipLength(); j++)
+                sunk.clear(ship.getCellY(j) * size + ship.getCellX(j));
+        }
+        for (int index = sunk.nextSetBit(0); index != -1; index = sunk.nextSetBit(index + 1))
+            visibleHash ^= visibleStateKey(index, VISIBLE_HIT) ^ visibleStateKey(index, VISIBLE_SUNK);
+    }
+
+    /**
+     * Getter for the hash attribute
+     * @return The 64 bit Zobrist hash of the fields of the board, ships
+     * included, which identifies the exact board
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Getter for the visibleHash attribute
+     * @return The 64 bit Zobrist hash of the misses, hits and sunk ships,
+     * which identifies what the opponent knows about the board
+     */
+    public long getVisibleHash() {
+        return visibleHash;
+    }
+
+    /**
+     * Getter for the size attribute
+     * @return The width and height of the board
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Getter for the fleet attribute (all ships, including the sunk ones).
+     * The array is not copied and must not be modified.
+     * @return The ships of the fleet
+     */
+    Ship[] getFleet() {
+        return fleet;
+    }
+
+    /**
+     * Gets the number of ships that are not sunk yet
+     * @return The number of remaining ships
+     */
+    public int getRemainingShipCount() {
+        return ships.size();
+    }
+
+    /**
+     * Gets the lengths of all ships that have not been sunk yet
+     * @return An array containing the lengths of the remaining ships
+     */
+    public int[] getRemainingShipLengths() {
+        int[] lengths = new int[ships.size()];
+        for (int i = 0; i < lengths.length; i++)
+            lengths[i] = ships.get(i).getShipLength();
+        return lengths;
+    }
+
+    /**
+     * Gets the configuration of the board, i.e. its size and the shapes of its fleet
+     * @return The configuration of the board
+     */
+    public BoardConfiguration getConfiguration() {
+        return new BoardConfiguration(size, shapes);
+    }
+
+    /**
+     * Gets the shapes of all ships that have not been sunk yet
+     * @return An array containing the shapes of the remaining ships
+     */
+    public ShipShape[] getRemainingShipShapes() {
+        ShipShape[] remaining = new ShipShape[ships.size()];
+        for (int i = 0; i < remaining.length; i++)
+            remaining[i] = ships.get(i).getShape();
+        return remaining;
+    }
+
+    /**
+     * Checks whether the field at coordinates x, y belongs to a ship that
+     * has already been sunk
+     * @param x x coordinate on the board.
+     * @param y y coordinate on the board.
+     * @return Whether the field is a HIT that does not belong to a remaining ship
+     */
+    public boolean isPartOfSunkShip(int x, int y) {
+        if (fields[x][y] != HIT)
+            return false;
+        for (Ship ship :
+                ships) {
+            if (ship.covers(x, y))
+                return false;
         }
         return true;
     }
@@ -0,0 +1,136 @@
+package de.htw.battleship;
+
+import java.util.Arrays;
+
+/**
+ * An instance of this class describes how a board is built: its size and
+ * the shapes of the ships of its fleet. Configurations are immutable and
+ * can be used as keys, e.g. for the BoardPool.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class BoardConfiguration {
+    /**
+     * The configuration of the classic game: a 10x10 board with 6 ships
+     */
+    public static final BoardConfiguration DEFAULT = new BoardConfiguration(Board.BOARD_SIZE, new int[]{5,4,3,3,2,2});
+    /**
+     * A 10x10 board with a fleet of straight and bent ships
+     */
+    public static final BoardConfiguration POLYOMINO = new BoardConfiguration(Board.BOARD_SIZE, new ShipShape[]{
+            ShipShape.line(5),
+            ShipShape.parse("0.0/0.1/0.2/1.2"),
+            ShipShape.parse("0.0/1.0/2.0/1.1"),
+            ShipShape.parse("1.0/2.0/0.1/1.1"),
+            ShipShape.parse("0.0/1.0/0.1/1.1"),
+            ShipShape.line(2)
+    });
+
+    private final int size;
+    private final ShipShape[] shapes;
+
+    /**
+     * Generate a new board configuration with straight ships
+     * @param size The width and height of the board
+     * @param shipLengths The lengths of the ships of the fleet
+     */
+    public BoardConfiguration(int size, int[] shipLengths) {
+        this.size = size;
+        this.shapes = new ShipShape[shipLengths.length];
+        for (int i = 0; i < shipLengths.length; i++)
+            shapes[i] = ShipShape.line(shipLengths[i]);
+    }
+
+    /**
+     * Generate a new board configuration with ships of any shape
+     * @param size The width and height of the board
+     * @param shapes The shapes of the ships of the fleet
+     */
+    public BoardConfiguration(int size, ShipShape[] shapes) {
+        this.size = size;
+        this.shapes = shapes.clone();
+    }
+
+    /**
+     * Parses a configuration from its string representation
+     * @param string The string created by toString, e.g. "10:5,4,3,3,2,2"
+     * @return The parsed configuration
+     */
+    public static BoardConfiguration parse(String string) {
+        String[] parts = string.split(":");
+        String[] ships = parts[1].split(",");
+        ShipShape[] shapes = new ShipShape[ships.length];
+        for (int i = 0; i < ships.length; i++)
+            shapes[i] = ships[i].contains(".") ? ShipShape.parse(ships[i]) : ShipShape.line(Integer.parseInt(ships[i]));
+        return new BoardConfiguration(Integer.parseInt(parts[0]), shapes);
+    }
+
+    /**
+     * Getter for the size attribute
+     * @return The width and height of the board
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the number of fields of every ship of the fleet
+     * @return The lengths (numbers of fields) of the ships of the fleet
+     */
+    public int[] getShipLengths() {
+        int[] shipLengths = new int[shapes.length];
+        for (int i = 0; i < shapes.length; i++)
+            shipLengths[i] = shapes[i].getCellCount();
+        return shipLengths;
+    }
+
+    /**
+     * Getter for the shapes attribute
+     * @return A copy of the shapes of the ships of the fleet
+     */
+    public ShipShape[] getShapes() {
+        return shapes.clone();
+    }
+
+    /**
+     * Checks if two configurations describe the same boards
+     * @param o The other object
+     * @return Whether the other object is a configuration with the same size and fleet
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof BoardConfiguration))
+            return false;
+        BoardConfiguration other = (BoardConfiguration) o;
+        return size == other.size && Arrays.equals(shapes, other.shapes);
+    }
+
+    /**
+     * Calculates the hash code based on size and fleet
+     * @return The hash code of the configuration
+     */
+    @Override
+    public int hashCode() {
+        return 31 * size + Arrays.hashCode(shapes);
+    }
+
+    /**
+     * Converts the configuration into its string representation
+     * @return The string representation of the configuration, e.g.
+     * "10:5,4,3,3,2,2" (straight ships are written as their length)
+     */
+    public String toString() {
+        StringBuilder builder = new StringBuilder().append(size).append(':');
+        for (int i = 0; i < shapes.length; i++) {
+            if (i > 0)
+                builder.append(',');
+            if (shapes[i].isLine())
+                builder.append(shapes[i].getCellCount());
+            else
+                builder.append(shapes[i]);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,118 @@
+package de.htw.battleship;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * An instance of this class keeps a bounded number of ready generated boards
+ * per board configuration, so a new game does not have to wait for the ship
+ * placement. Taken boards are replaced asynchronously by a background thread.
+ * If a pool is empty, the board is generated synchronously instead.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class BoardPool {
+    /**
+     * The number of boards kept ready per configuration by the shared pool.
+     * A game needs two boards, so this covers a few games in a row.
+     */
+    public static final int DEFAULT_CAPACITY = 8;
+
+    private static final BoardPool shared = new BoardPool(DEFAULT_CAPACITY);
+
+    private final int capacity;
+    private final ConcurrentHashMap<BoardConfiguration, ArrayBlockingQueue<Board>> pools =
+            new ConcurrentHashMap<BoardConfiguration, ArrayBlockingQueue<Board>>();
+    private final Set<BoardConfiguration> refilling = ConcurrentHashMap.newKeySet();
+    private final ExecutorService producer;
+
+    /**
+     * Generate a new, empty board pool
+     * @param capacity The maximum number of boards kept per configuration
+     */
+    public BoardPool(int capacity) {
+        this.capacity = capacity;
+        this.producer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "board-pool");
+            // The pool must not keep the application alive
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Getter for the pool shared by the whole application
+     * @return The shared board pool
+     */
+    public static BoardPool getShared() {
+        return shared;
+    }
+
+    /**
+     * Takes a ready board of the given configuration out of the pool and
+     * triggers a refill. Generates the board synchronously if the pool is empty.
+     * @param configuration The size and fleet of the board
+     * @return A new board that is not used anywhere else
+     */
+    public Board take(BoardConfiguration configuration) {
+        Board board = poolOf(configuration).poll();
+        prefill(configuration);
+        return board != null ? board : new Board(configuration);
+    }
+
+    /**
+     * Starts filling the pool of the given configuration in the background
+     * (e.g. at startup, before the first game is started)
+     * @param configuration The size and fleet of the boards
+     */
+    public void prefill(BoardConfiguration configuration) {
+        ArrayBlockingQueue<Board> pool = poolOf(configuration);
+        if (producer.isShutdown() || pool.remainingCapacity() == 0 || !refilling.add(configuration))
+            return;
+        try {
+            producer.execute(() -> {
+                try {
+                    while (pool.remainingCapacity() > 0)
+                        pool.offer(new Board(configuration));
+                } finally {
+                    refilling.remove(configuration);
+                }
+                // A board might have been taken after the loop ended
+                if (pool.remainingCapacity() > 0)
+                    prefill(configuration);
+            });
+        } catch (RejectedExecutionException e) {
+            refilling.remove(configuration);
+        }
+    }
+
+    /**
+     * Gets the number of boards of the given configuration that are ready
+     * @param configuration The size and fleet of the boards
+     * @return The number of ready boards
+     */
+    public int available(BoardConfiguration configuration) {
+        return poolOf(configuration).size();
+    }
+
+    /**
+     * Stops the background thread. Boards can still be taken, but will be
+     * generated synchronously once the pool is empty.
+     */
+    public void shutdown() {
+        producer.shutdownNow();
+    }
+
+    /**
+     * Gets the pool of the given configuration, creating it if necessary
+     * @param configuration The size and fleet of the boards
+     * @return The queue holding the ready boards
+     */
+    private ArrayBlockingQueue<Board> poolOf(BoardConfiguration configuration) {
+        return pools.computeIfAbsent(configuration, c -> new ArrayBlockingQueue<Board>(capacity));
+    }
+}
@@ -0,0 +1,140 @@
+package de.htw.battleship;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A board that several players or AIs can shoot at simultaneously, e.g. in
+ * team games. Fields change their state with compare-and-set, so no shot is
+ * ever lost and every field is hit exactly once. Every ship has an atomic
+ * counter of its fields that have not been hit yet: the thread whose shot
+ * brings it to zero is the only one that reports the ship as sunk. The fleet
+ * is sunk when the atomic counter of remaining ships reaches zero.
+ * No locks are used, so throughput grows with the number of shooters.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class ConcurrentBoard {
+    private final int size;
+    private final AtomicIntegerArray fields;
+    /**
+     * The index of the ship on every field or -1. Never changes after construction.
+     */
+    private final int[] shipOfField;
+    private final Ship[] fleet;
+    private final AtomicIntegerArray remainingHits;
+    private final AtomicInteger remainingShips = new AtomicInteger();
+
+    /**
+     * Create a concurrent board with the current state of a board
+     * @param board The board being copied
+     */
+    public ConcurrentBoard(Board board) {
+        this.size = board.getSize();
+        this.fields = new AtomicIntegerArray(size * size);
+        this.shipOfField = new int[size * size];
+        Arrays.fill(shipOfField, -1);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++)
+                fields.set(y * size + x, board.getField(x, y));
+        }
+        // Ships are reused by Board.reset and the pools, so the copy needs its own ones
+        Ship[] source = board.getFleet();
+        this.fleet = new Ship[source.length];
+        this.remainingHits = new AtomicIntegerArray(fleet.length);
+        for (int i = 0; i < fleet.length; i++) {
+            Ship ship = source[i];
+            fleet[i] = ship.getShape() == null ? new Ship(ship.x, ship.y) :
+                    new Ship(ship.x, ship.y, ship.getShape(), ship.getRotation());
+            int remaining = 0;
+            for (int j = 0; j < ship.getShipLength(); j++) {
+                int index = ship.getCellY(j) * size + ship.getCellX(j);
+                shipOfField[index] = i;
+                if (fields.get(index) == Board.SHIP)
+                    remaining++;
+            }
+            remainingHits.set(i, remaining);
+            if (remaining > 0)
+                remainingShips.incrementAndGet();
+        }
+    }
+
+    /**
+     * "Shoots" the given coordinates. Can be called by any number of threads at once.
+     * @param x The x coordinate being shot at
+     * @param y The y coordinate being shot at
+     * @return The result code of the shot (0: miss/already hit, 1: hit, 2: ship sunk),
+     * like Board.shoot
+     */
+    public int shoot(int x, int y) {
+        int index = y * size + x;
+        while (true) {
+            int field = fields.get(index);
+            if (field == Board.HIT || field == Board.MISSED_SHOT)
+                return 0;
+            if (field == Board.EMPTY) {
+                if (fields.compareAndSet(index, Board.EMPTY, Board.MISSED_SHOT))
+                    return 0;
+            } else if (fields.compareAndSet(index, Board.SHIP, Board.HIT)) {
+                if (remainingHits.decrementAndGet(shipOfField[index]) > 0)
+                    return 1;
+                remainingShips.decrementAndGet();
+                return 2;
+            }
+            // Another shooter changed the field in the meantime, look again
+        }
+    }
+
+    /**
+     * Checks if the whole fleet is sunk.
+     * @return FALSE if at least one ship is remaining. TRUE otherwise.
+     */
+    public boolean isWholeFleetSunk() {
+        return remainingShips.get() == 0;
+    }
+
+    /**
+     * Gets the number of ships that have not been sunk yet
+     * @return The number of remaining ships
+     */
+    public int getRemainingShips() {
+        return remainingShips.get();
+    }
+
+    /**
+     * Gets the value of the field at coordinates x, y
+     * @param x x coordinate on the board.
+     * @param y y coordinate on the board.
+     * @return The value of the specified field.
+     */
+    public char getField(int x, int y) {
+        return (char) fields.get(y * size + x);
+    }
+
+    /**
+     * Getter for the size attribute
+     * @return The width and height of the board
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Creates a normal Board with the current state, e.g. for printing or
+     * saving. Shots fired while the snapshot is taken may or may not be included.
+     * @return A new board with the current fields and the remaining ships
+     */
+    public Board snapshot() {
+        StringBuilder builder = new StringBuilder(size * size);
+        for (int i = 0; i < size * size; i++)
+            builder.append((char) fields.get(i));
+        ArrayList<Ship> ships = new ArrayList<Ship>();
+        for (int i = 0; i < fleet.length; i++) {
+            if (remainingHits.get(i) > 0)
+                ships.add(new Ship(fleet[i].x, fleet[i].y, fleet[i].getShape(), fleet[i].getRotation()));
+        }
+        return new Board(builder.toString(), ships);
+    }
+}
@@ -0,0 +1,134 @@
+package de.htw.battleship;
+
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Writes the output of a game on its own thread. The game thread only puts
+ * frames into a queue: texts and snapshots of boards, which are copies that
+ * are never changed again. The output thread renders and writes them in
+ * order, so the game (e.g. the AI choosing its next shot) continues while
+ * a slow terminal is still busy with the previous frame.
+ * Before reading input the game has to call flush, so the prompt is visible.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class ConsoleRenderer {
+    private static ConsoleRenderer shared;
+
+    private final PrintStream out;
+    private final LinkedBlockingQueue<Frame> frames = new LinkedBlockingQueue<Frame>();
+
+    /**
+     * Constructor of the class. Starts the output thread.
+     * @param out The stream the frames are written to
+     */
+    public ConsoleRenderer(PrintStream out) {
+        this.out = out;
+        Thread thread = new Thread(this::writeFrames, "console-renderer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Gets the renderer writing to System.out, used by all games
+     * @return The shared renderer
+     */
+    public static synchronized ConsoleRenderer getShared() {
+        if (shared == null)
+            shared = new ConsoleRenderer(System.out);
+        return shared;
+    }
+
+    /**
+     * Queues a snapshot of a board. Later changes of the board are not shown.
+     * @param board The board being shown
+     * @param hideShips if TRUE, replaces ships by empty fields in output
+     */
+    public void show(Board board, boolean hideShips) {
+        frames.add(new Frame(board.copy(), hideShips, null, null));
+    }
+
+    /**
+     * Queues a text
+     * @param text The text being written
+     */
+    public void print(String text) {
+        frames.add(new Frame(null, false, text, null));
+    }
+
+    /**
+     * Queues a text followed by a line break
+     * @param text The text being written
+     */
+    public void println(String text) {
+        print(text + System.lineSeparator());
+    }
+
+    /**
+     * Queues a line break
+     */
+    public void println() {
+        print(System.lineSeparator());
+    }
+
+    /**
+     * Waits until every queued frame has been written
+     */
+    public void flush() {
+        CountDownLatch written = new CountDownLatch(1);
+        frames.add(new Frame(null, false, null, written));
+        try {
+            written.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The loop of the output thread. A frame that fails to render or write
+     * is reported and skipped.
+     */
+    private void writeFrames() {
+        while (true) {
+            Frame frame;
+            try {
+                frame = frames.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            // A broken frame must neither end the output thread nor keep flush waiting
+            try {
+                if (frame.board != null)
+                    out.print(frame.board.render(frame.hideShips));
+                else if (frame.text != null)
+                    out.print(frame.text);
+                if (frame.written != null || frames.isEmpty())
+                    out.flush();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            } finally {
+                if (frame.written != null)
+                    frame.written.countDown();
+            }
+        }
+    }
+
+    /**
+     * One entry of the queue: a board snapshot, a text or a flush marker
+     */
+    private static class Frame {
+        final Board board;
+        final boolean hideShips;
+        final String text;
+        final CountDownLatch written;
+
+        Frame(Board board, boolean hideShips, String text, CountDownLatch written) {
+            this.board = board;
+            this.hideShips = hideShips;
+            this.text = text;
+            this.written = written;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package de.htw.battleship;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * An instance of this class computes exact shots for the end of a game.
+ * It only uses what a human player could know (hits, misses, sunk ships and
+ * the shapes of the remaining ships), enumerates every legal placement of
+ * the remaining ships and picks the shot with the fewest expected misses.
+ * The solver refuses to run if the estimated search space is too large or
+ * the deadline passes before the configurations are counted, so the caller
+ * always needs a fallback.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class EndgameSolver {
+    /**
+     * Up to this many configurations the expected number of misses is
+     * minimized exactly, otherwise the most probable field is chosen.
+     */
+    private static final int EXACT_LIMIT = 16;
+
+    private final long maxSearchSpace;
+    private final long budgetNanos;
+
+    private int size;
+    private BitMask hits;
+    private ShipShape[] shapes;
+    private BitMask[][] placements;
+    private BitMask[][] halos;
+    private int[] fieldCounts;
+    private BitMask[] usedStack;
+    private BitMask[] occupiedStack;
+    private final ArrayList<BitMask> configurations = new ArrayList<BitMask>();
+    private int nConfigurations;
+    private long deadline;
+    private boolean aborted;
+
+    /**
+     * Constructor of the class
+     * @param maxSearchSpace The largest estimated number of placement
+     *                       combinations the solver is allowed to search
+     * @param budgetNanos The time the solver may spend on one shot
+     */
+    public EndgameSolver(long maxSearchSpace, long budgetNanos) {
+        this.maxSearchSpace = maxSearchSpace;
+        this.budgetNanos = budgetNanos;
+    }
+
+    /**
+     * Computes the next shot on the given board within the time budget of the solver.
+     * @param board The board being shot at
+     * @return The position to play in the next move or null if the search
+     * space is too large or the time budget ran out
+     */
+    public Vector2d solve(Board board) {
+        return solve(board, System.nanoTime() + budgetNanos);
+    }
+
+    /**
+     * Computes the next shot on the given board until a deadline. If the
+     * configurations have been counted but the exact search runs out of
+     * time, the most probable field is returned.
+     * @param board The board being shot at
+     * @param deadline The System.nanoTime() value at which the search stops
+     * @return The position to play in the next move or null if the search
+     * space is too large or the deadline passed before any answer was found
+     */
+    public Vector2d solve(Board board, long deadline) {
+        this.deadline = deadline;
+        this.aborted = false;
+        this.size = board.getSize();
+        int nFields = size * size;
+        this.shapes = board.getRemainingShipShapes();
+        if (shapes.length == 0)
+            return null;
+
+        BitMask blocked = new BitMask(nFields);
+        this.hits = new BitMask(nFields);
+        BitMask shot = new BitMask(nFields);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                char field = board.getField(x, y);
+                if (field == Board.MISSED_SHOT) {
+                    blocked.set(y * size + x);
+                    shot.set(y * size + x);
+                } else if (field == Board.HIT) {
+                    shot.set(y * size + x);
+                    if (board.isPartOfSunkShip(x, y))
+                        addHalo(blocked, x, y);
+                    else
+                        hits.set(y * size + x);
+                }
+            }
+        }
+
+        if (!generatePlacements(blocked))
+            return null;
+
+        this.fieldCounts = new int[nFields];
+        this.configurations.clear();
+        this.nConfigurations = 0;
+        this.usedStack = new BitMask[shapes.length + 1];
+        this.occupiedStack = new BitMask[shapes.length + 1];
+        for (int i = 0; i <= shapes.length; i++) {
+            usedStack[i] = new BitMask(nFields);
+            occupiedStack[i] = new BitMask(nFields);
+        }
+        search(0, -1);
+        if (aborted || nConfigurations == 0)
+            return null;
+
+        int n = nConfigurations;
+        int best = -1;
+        for (int i = 0; i < nFields; i++) {
+            if (shot.get(i) || fieldCounts[i] == 0)
+                continue;
+            // A field that holds a ship in every configuration is a free hit
+            if (fieldCounts[i] == n)
+                return new Vector2d(i % size, i / size);
+            if (best == -1 || fieldCounts[i] > fieldCounts[best])
+                best = i;
+        }
+        if (best == -1)
+            return null;
+
+        // If the exact search runs out of time the most probable field is still a good shot
+        if (n <= EXACT_LIMIT) {
+            int exact = exactShot(shot);
+            if (exact != -1)
+                best = exact;
+        }
+        return new Vector2d(best % size, best / size);
+    }
+
+    /**
+     * Checks whether the last search was stopped by its deadline, i.e. the
+     * last answer may not be the best one
+     * @return Whether the last search was stopped early
+     */
+    public boolean wasInterrupted() {
+        return aborted;
+    }
+
+    /**
+     * Generates every single legal placement of every remaining ship shape
+     * and estimates the search space. The shapes are sorted by size, equal
+     * shapes next to each other.
+     * @param blocked The fields that can not hold a ship
+     * @return Whether the estimated search space fits into the limit
+     */
+    private boolean generatePlacements(BitMask blocked) {
+        int nFields = size * size;
+        Arrays.sort(shapes, (a, b) -> a.getCellCount() != b.getCellCount() ?
+                b.getCellCount() - a.getCellCount() : a.toString().compareTo(b.toString()));
+        this.placements = new BitMask[shapes.length][];
+        this.halos = new BitMask[shapes.length][];
+        double estimate = 1;
+        for (int s = 0; s < shapes.length; s++) {
+            if (s > 0 && shapes[s].equals(shapes[s - 1])) {
+                placements[s] = placements[s - 1];
+                halos[s] = halos[s - 1];
+            } else {
+                ArrayList<BitMask> shipPlacements = new ArrayList<BitMask>();
+                ArrayList<BitMask> shipHalos = new ArrayList<BitMask>();
+                ShipShape shape = shapes[s];
+                for (int r = 0; r < (shape.getCellCount() == 1 ? 1 : shape.getRotationCount()); r++) {
+                    ShipShape.Rotation rotation = shape.getRotation(r);
+                    for (int y = 0; y + rotation.height <= size; y++) {
+                        for (int x = 0; x + rotation.width <= size; x++) {
+                            BitMask cells = new BitMask(nFields);
+                            for (int i = 0; i < shape.getCellCount(); i++)
+                                cells.set((y + rotation.cellY[i]) * size + x + rotation.cellX[i]);
+                            // Blocked fields can not hold a ship and a fully hit ship would be sunk
+                            if (cells.intersects(blocked) || hits.containsAll(cells))
+                                continue;
+                            BitMask halo = new BitMask(nFields);
+                            for (int i = 0; i < shape.getCellCount(); i++)
+                                addHalo(halo, x + rotation.cellX[i], y + rotation.cellY[i]);
+                            shipPlacements.add(cells);
+                            shipHalos.add(halo);
+                        }
+                    }
+                }
+                placements[s] = shipPlacements.toArray(new BitMask[0]);
+                halos[s] = shipHalos.toArray(new BitMask[0]);
+            }
+            estimate *= placements[s].length;
+            if (estimate > maxSearchSpace)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Places the remaining ships one after another (depth first) and counts
+     * for every field how many complete configurations put a ship on it.
+     * The fields covered by or touching the already placed ships are kept
+     * in usedStack[s], the fields covered by them in occupiedStack[s].
+     * @param s The index of the ship being placed
+     * @param previous The placement index of the previous ship, used to skip
+     *                 permutations of ships with the same shape
+     */
+    private void search(int s, int previous) {
+        BitMask used = usedStack[s];
+        BitMask occupied = occupiedStack[s];
+        if (aborted)
+            return;
+        if (System.nanoTime() > deadline) {
+            aborted = true;
+            return;
+        }
+        if (s == shapes.length) {
+            if (!occupied.containsAll(hits))
+                return;
+            for (int i = occupied.nextSetBit(0); i != -1; i = occupied.nextSetBit(i + 1))
+                fieldCounts[i]++;
+            // Only small sets of configurations are kept for the exact search
+            if (++nConfigurations <= EXACT_LIMIT)
+                configurations.add(new BitMask(occupied));
+            return;
+        }
+        // Prune if the remaining ships can not cover all unresolved hits anymore
+        int remainingCells = 0;
+        for (int i = s; i < shapes.length; i++)
+            remainingCells += shapes[i].getCellCount();
+        if (hits.cardinalityAndNot(occupied) > remainingCells)
+            return;
+
+        boolean sameAsPrevious = s > 0 && shapes[s].equals(shapes[s - 1]);
+        BitMask[] shipPlacements = placements[s];
+        for (int p = sameAsPrevious ? previous + 1 : 0; p < shipPlacements.length; p++) {
+            if (shipPlacements[p].intersects(used))
+                continue;
+            usedStack[s + 1].copyFrom(used);
+            usedStack[s + 1].or(halos[s][p]);
+            occupiedStack[s + 1].copyFrom(occupied);
+            occupiedStack[s + 1].or(shipPlacements[p]);
+            search(s + 1, p);
+        }
+    }
+
+    /**
+     * Minimizes the expected number of misses over all configurations. The
+     * number of hits until the fleet is sunk is the same for every strategy,
+     * so this also minimizes the expected number of remaining shots.
+     * @param shot The fields that have already been shot at
+     * @return The field with the fewest expected misses or -1 if the time
+     * budget ran out
+     */
+    private int exactShot(BitMask shot) {
+        int n = configurations.size();
+        long all = n == 64 ? -1L : (1L << n) - 1;
+        HashMap<Long, Double> memo = new HashMap<Long, Double>();
+        int best = -1;
+        double bestValue = Double.MAX_VALUE;
+        for (int i = 0; i < size * size; i++) {
+            if (shot.get(i) || fieldCounts[i] == 0)
+                continue;
+            long hitSet = subset(all, i);
+            double value = ((double) Long.bitCount(all & ~hitSet) / n) * (1 + expectedMisses(all & ~hitSet, memo))
+                    + ((double) Long.bitCount(hitSet) / n) * expectedMisses(hitSet, memo);
+            if (aborted)
+                return -1;
+            if (value < bestValue) {
+                bestValue = value;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Calculates the expected number of misses needed to identify the
+     * configuration out of the given set.
+     * @param set The remaining configurations, one bit per configuration
+     * @param memo Already calculated results
+     * @return The expected number of misses
+     */
+    private double expectedMisses(long set, HashMap<Long, Double> memo) {
+        int n = Long.bitCount(set);
+        if (n <= 1)
+            return 0;
+        Double known = memo.get(set);
+        if (known != null)
+            return known;
+        if (System.nanoTime() > deadline) {
+            aborted = true;
+            return 0;
+        }
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < size * size && !aborted; i++) {
+            long hitSet = subset(set, i);
+            int nHit = Long.bitCount(hitSet);
+            // Fields that do not split the set give no information
+            if (nHit == 0 || nHit == n)
+                continue;
+            double value = ((double) (n - nHit) / n) * (1 + expectedMisses(set & ~hitSet, memo))
+                    + ((double) nHit / n) * expectedMisses(hitSet, memo);
+            best = Math.min(best, value);
+        }
+        if (best == Double.MAX_VALUE)
+            best = 0;
+        memo.put(set, best);
+        return best;
+    }
+
+    /**
+     * Selects the configurations of the given set that put a ship on the given field
+     * @param set The configurations, one bit per configuration
+     * @param field The index of the field
+     * @return The configurations with a ship on the field
+     */
+    private long subset(long set, int field) {
+        long result = 0;
+        for (long rest = set; rest != 0; rest &= rest - 1) {
+            int c = Long.numberOfTrailingZeros(rest);
+            if (configurations.get(c).get(field))
+                result |= 1L << c;
+        }
+        return result;
+    }
+
+    /**
+     * Adds the field at the given coordinates and its surrounding fields to a mask
+     * @param mask The mask the fields are added to
+     * @param x The x coordinate of the field
+     * @param y The y coordinate of the field
+     */
+    private void addHalo(BitMask mask, int x, int y) {
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                int nx = x + dx;
+                int ny = y + dy;
+                if (nx >= 0 && nx < size && ny >= 0 && ny < size)
+                    mask.set(ny * size + nx);
+            }
+        }
+    }
+}
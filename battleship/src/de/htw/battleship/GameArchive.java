@@ -0,0 +1,386 @@
+package de.htw.battleship;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.function.IntConsumer;
+
+/**
+ * An instance of this class stores the final states of many games outside
+ * of the Java heap, in one direct ByteBuffer. Every game is a fixed size
+ * record, so a game can be found by its id without any index:
+ * <ul>
+ *     <li>ship mask: one bit per field holding a ship (hit or not)</li>
+ *     <li>shot mask: one bit per field that has been shot at</li>
+ *     <li>shot order: the fields in the order they were shot at, packed with
+ *     as few bits per field as the board size needs; only the first shots up to a
+ *     fixed limit are stored, the number of shots is always the full one</li>
+ *     <li>one record per ship: top left field (int), number of fields and rotation (bytes);
+ *     the shape is the one of the configuration</li>
+ *     <li>AI level (byte) and number of shots (int)</li>
+ * </ul>
+ * The two masks describe every field completely, e.g. a field in both
+ * masks is a HIT. The whole archive can be written to and read from a file
+ * in one bulk operation.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class GameArchive {
+    private static final int MAGIC = 0x42534733;
+    /**
+     * Archives of the second version had no shot order
+     */
+    private static final int MAGIC_NO_ORDER = 0x42534732;
+    /**
+     * Archives of the first version only had straight ships and stored the lengths in the header
+     */
+    private static final int MAGIC_LINES = 0x42534741;
+    private static final int SHIP_RECORD_SIZE = 6;
+
+    private final BoardConfiguration configuration;
+    private final int size;
+    private final int nShips;
+    private final int maskBytes;
+    private final int maxShots;
+    private final int cellBits;
+    private final int orderBytes;
+    private final int recordSize;
+    private final ByteBuffer buffer;
+    private int count = 0;
+
+    /**
+     * Generate a new empty archive with room for the order of one shot per
+     * field, which covers every game without repeated shots
+     * @param configuration The size and fleet of the archived boards
+     * @param capacity The maximum number of games
+     */
+    public GameArchive(BoardConfiguration configuration, int capacity) {
+        this(configuration, capacity, configuration.getSize() * configuration.getSize());
+    }
+
+    /**
+     * Generate a new empty archive
+     * @param configuration The size and fleet of the archived boards
+     * @param capacity The maximum number of games
+     * @param maxShots The maximum number of shots of a game whose order is
+     *                 stored, the order of the later shots is dropped
+     */
+    public GameArchive(BoardConfiguration configuration, int capacity, int maxShots) {
+        this.configuration = configuration;
+        this.size = configuration.getSize();
+        this.nShips = configuration.getShapes().length;
+        this.maskBytes = (size * size + 63) / 64 * 8;
+        this.maxShots = maxShots;
+        this.cellBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(size * size - 1));
+        this.orderBytes = (int) (((long) maxShots * cellBits + 63) / 64 * 8);
+        // Records are padded to 8 bytes, so the masks can be read as aligned longs
+        this.recordSize = (2 * maskBytes + orderBytes + nShips * SHIP_RECORD_SIZE + 1 + 4 + 7) / 8 * 8;
+        long bytes = (long) recordSize * capacity;
+        if (bytes > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Archive too large: " + bytes + " bytes");
+        this.buffer = ByteBuffer.allocateDirect((int) bytes);
+    }
+
+    /**
+     * Stores the final state of a game. Only the first maxShots shots are
+     * stored, the number of shots is always the full one.
+     * @param board The board the AI has shot at
+     * @param aiLevel The level of the AI
+     * @param shots The fields shot at (y * size + x), in the order of the shots
+     * @return The id of the game
+     */
+    public synchronized int append(Board board, int aiLevel, int[] shots) {
+        if (board.getSize() != size)
+            throw new IllegalArgumentException("Board size " + board.getSize() + " does not match archive size " + size);
+        if (board.getFleet().length != nShips)
+            throw new IllegalArgumentException("Fleet of " + board.getFleet().length + " ships does not match archive fleet of " + nShips);
+        ShipShape[] shapes = configuration.getShapes();
+        for (int i = 0; i < nShips; i++) {
+            // getBoard rebuilds the ships from the shapes of the configuration
+            if (!shapes[i].equals(board.getFleet()[i].getShape()))
+                throw new IllegalArgumentException("Ship " + i + " does not have the shape of the archive fleet");
+        }
+        if ((count + 1) * recordSize > buffer.capacity())
+            throw new IllegalStateException("Archive is full");
+        int offset = count * recordSize;
+        for (int i = 0; i < 2 * maskBytes + orderBytes; i += 8)
+            buffer.putLong(offset + i, 0L);
+        for (int i = 0; i < shots.length; i++) {
+            if (shots[i] < 0 || shots[i] >= size * size)
+                throw new IllegalArgumentException("Shot " + shots[i] + " is outside of the board");
+            if (i < maxShots)
+                putCell(offset + 2 * maskBytes, i, shots[i]);
+        }
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                char field = board.getField(x, y);
+                int index = y * size + x;
+                if (field == Board.SHIP || field == Board.HIT)
+                    setBit(offset, index);
+                if (field == Board.HIT || field == Board.MISSED_SHOT)
+                    setBit(offset + maskBytes, index);
+            }
+        }
+        int position = offset + 2 * maskBytes + orderBytes;
+        for (Ship ship : board.getFleet()) {
+            buffer.putInt(position, ship.y * size + ship.x);
+            buffer.put(position + 4, (byte) ship.getShipLength());
+            buffer.put(position + 5, (byte) ship.getRotation());
+            position += SHIP_RECORD_SIZE;
+        }
+        buffer.put(position, (byte) aiLevel);
+        buffer.putInt(position + 1, shots.length);
+        return count++;
+    }
+
+    /**
+     * Gets the number of stored games
+     * @return The number of stored games
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Calls the given consumer with the id of every stored game, in order
+     * @param consumer The consumer of the ids
+     */
+    public void forEach(IntConsumer consumer) {
+        int n = size();
+        for (int id = 0; id < n; id++)
+            consumer.accept(id);
+    }
+
+    /**
+     * Checks whether a field of a stored game holds a ship
+     * @param id The id of the game
+     * @param x The x coordinate of the field
+     * @param y The y coordinate of the field
+     * @return Whether the field holds a ship (hit or not)
+     */
+    public boolean isShip(int id, int x, int y) {
+        return getBit(id * recordSize, y * size + x);
+    }
+
+    /**
+     * Checks whether a field of a stored game has been shot at
+     * @param id The id of the game
+     * @param x The x coordinate of the field
+     * @param y The y coordinate of the field
+     * @return Whether the field has been shot at
+     */
+    public boolean isShot(int id, int x, int y) {
+        return getBit(id * recordSize + maskBytes, y * size + x);
+    }
+
+    /**
+     * Gets the AI level of a stored game
+     * @param id The id of the game
+     * @return The level of the AI
+     */
+    public int getAILevel(int id) {
+        return buffer.get(id * recordSize + 2 * maskBytes + orderBytes + nShips * SHIP_RECORD_SIZE);
+    }
+
+    /**
+     * Gets the number of shots of a stored game
+     * @param id The id of the game
+     * @return The number of shots fired
+     */
+    public int getShotCount(int id) {
+        return buffer.getInt(id * recordSize + 2 * maskBytes + orderBytes + nShips * SHIP_RECORD_SIZE + 1);
+    }
+
+    /**
+     * Gets one shot of a stored game. Archives of older versions did not
+     * store the order, their games have no shots to get. Of longer games
+     * only the first maxShots shots can be got.
+     * @param id The id of the game
+     * @param n The number of the shot, starting at 0
+     * @return The field of the n-th shot
+     */
+    public Vector2d getShot(int id, int n) {
+        int stored = Math.min(getShotCount(id), maxShots);
+        if (n < 0 || n >= stored)
+            throw new IndexOutOfBoundsException("Shot " + n + " of " + stored);
+        int cell = getCell(id * recordSize + 2 * maskBytes, n);
+        return new Vector2d(cell % size, cell / size);
+    }
+
+    /**
+     * Restores the final board of a stored game
+     * @param id The id of the game
+     * @return A new board with the stored fields and the ships that are not sunk
+     */
+    public Board getBoard(int id) {
+        StringBuilder fields = new StringBuilder(size * size);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                boolean ship = isShip(id, x, y);
+                boolean shot = isShot(id, x, y);
+                fields.append(ship ? (shot ? Board.HIT : Board.SHIP) : (shot ? Board.MISSED_SHOT : Board.EMPTY));
+            }
+        }
+        ArrayList<Ship> ships = new ArrayList<Ship>();
+        ShipShape[] shapes = configuration.getShapes();
+        int position = id * recordSize + 2 * maskBytes + orderBytes;
+        for (int i = 0; i < nShips; i++, position += SHIP_RECORD_SIZE) {
+            int start = buffer.getInt(position);
+            Ship ship = new Ship(start % size, start / size, shapes[i], buffer.get(position + 5));
+            for (int j = 0; j < ship.getShipLength(); j++) {
+                if (!isShot(id, ship.getCellX(j), ship.getCellY(j))) {
+                    ships.add(ship);
+                    break;
+                }
+            }
+        }
+        return new Board(fields.toString(), ships);
+    }
+
+    /**
+     * Writes the archive into a file with one bulk write. The header holds
+     * the configuration as a string, so any ship shapes can be restored.
+     * @param path The path of the file
+     * @throws IOException If the file can not be written
+     */
+    public void save(Path path) throws IOException {
+        byte[] fleet = configuration.toString().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(16 + fleet.length);
+        header.putInt(MAGIC).putInt(fleet.length).put(fleet).putInt(maxShots);
+        ByteBuffer records = buffer.duplicate();
+        records.position(0).limit(size() * recordSize);
+        header.putInt(size()).flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.write(new ByteBuffer[]{header, records});
+            while (records.hasRemaining())
+                channel.write(records);
+        }
+    }
+
+    /**
+     * Reads an archive from a file with one bulk read
+     * @param path The path of the file
+     * @param capacity The maximum number of games of the loaded archive
+     *                 (at least the number of games in the file)
+     * @return The loaded archive
+     * @throws IOException If the file can not be read or is not an archive
+     */
+    public static GameArchive load(Path path, int capacity) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(8);
+            readFully(channel, magic);
+            BoardConfiguration configuration;
+            int stored;
+            int maxShots = 0;
+            boolean lines = false;
+            if (magic.getInt(0) == MAGIC || magic.getInt(0) == MAGIC_NO_ORDER) {
+                boolean order = magic.getInt(0) == MAGIC;
+                int length = magic.getInt(4);
+                ByteBuffer fleet = ByteBuffer.allocate(length + (order ? 8 : 4));
+                readFully(channel, fleet);
+                configuration = BoardConfiguration.parse(
+                        new String(fleet.array(), 0, length, StandardCharsets.UTF_8));
+                if (order)
+                    maxShots = fleet.getInt(length);
+                stored = fleet.getInt(order ? length + 4 : length);
+            } else if (magic.getInt(0) == MAGIC_LINES) {
+                ByteBuffer nShips = ByteBuffer.allocate(4);
+                readFully(channel, nShips);
+                ByteBuffer lengths = ByteBuffer.allocate(4 * nShips.getInt(0) + 4);
+                readFully(channel, lengths);
+                int[] shipLengths = new int[nShips.getInt(0)];
+                for (int i = 0; i < shipLengths.length; i++)
+                    shipLengths[i] = lengths.getInt(4 * i);
+                configuration = new BoardConfiguration(magic.getInt(4), shipLengths);
+                stored = lengths.getInt(4 * shipLengths.length);
+                lines = true;
+            } else {
+                throw new IOException("Keine Archiv-Datei: " + path);
+            }
+            GameArchive archive = new GameArchive(configuration, Math.max(capacity, stored), maxShots);
+            ByteBuffer records = archive.buffer.duplicate();
+            records.limit(stored * archive.recordSize);
+            readFully(channel, records);
+            archive.count = stored;
+            if (lines) {
+                // The old records stored whether a ship is horizontal, which is rotation 0
+                for (int id = 0; id < stored; id++) {
+                    int position = id * archive.recordSize + 2 * archive.maskBytes + 5;
+                    for (int i = 0; i < archive.nShips; i++, position += SHIP_RECORD_SIZE)
+                        archive.buffer.put(position, (byte) (1 - archive.buffer.get(position)));
+                }
+            }
+            return archive;
+        }
+    }
+
+    /**
+     * Reads from a channel until the buffer is full
+     * @param channel The channel being read from
+     * @param target The buffer being filled
+     * @throws IOException If the channel ends too early
+     */
+    private static void readFully(FileChannel channel, ByteBuffer target) throws IOException {
+        while (target.hasRemaining()) {
+            if (channel.read(target) < 0)
+                throw new IOException("Unerwartetes Dateiende");
+        }
+    }
+
+    /**
+     * Writes one field into a packed shot order
+     * @param orderOffset The position of the shot order in the buffer, it must be cleared
+     * @param n The number of the shot
+     * @param cell The field (y * size + x)
+     */
+    private void putCell(int orderOffset, int n, int cell) {
+        long bit = (long) n * cellBits;
+        int position = orderOffset + (int) (bit >>> 6) * 8;
+        int shift = (int) (bit & 63);
+        buffer.putLong(position, buffer.getLong(position) | ((long) cell << shift));
+        // The field continues in the next long
+        if (shift + cellBits > 64)
+            buffer.putLong(position + 8, buffer.getLong(position + 8) | ((long) cell >>> (64 - shift)));
+    }
+
+    /**
+     * Reads one field of a packed shot order
+     * @param orderOffset The position of the shot order in the buffer
+     * @param n The number of the shot
+     * @return The field (y * size + x)
+     */
+    private int getCell(int orderOffset, int n) {
+        long bit = (long) n * cellBits;
+        int position = orderOffset + (int) (bit >>> 6) * 8;
+        int shift = (int) (bit & 63);
+        long value = buffer.getLong(position) >>> shift;
+        if (shift + cellBits > 64)
+            value |= buffer.getLong(position + 8) << (64 - shift);
+        return (int) (value & ((1L << cellBits) - 1));
+    }
+
+    /**
+     * Sets a bit of a mask
+     * @param maskOffset The position of the mask in the buffer
+     * @param index The index of the bit
+     */
+    private void setBit(int maskOffset, int index) {
+        int position = maskOffset + (index >>> 6) * 8;
+        buffer.putLong(position, buffer.getLong(position) | (1L << index));
+    }
+
+    /**
+     * Reads a bit of a mask
+     * @param maskOffset The position of the mask in the buffer
+     * @param index The index of the bit
+     * @return Whether the bit is set
+     */
+    private boolean getBit(int maskOffset, int index) {
+        return (buffer.getLong(maskOffset + (index >>> 6) * 8) & (1L << index)) != 0;
+    }
+}
@@ -0,0 +1,171 @@
+package de.htw.battleship;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Searches villain boards on which the AI needs as many shots as possible.
+ * Every board is the result of one simulated annealing run: a ship is moved
+ * to a random legal position and the new board is kept if the AI levels
+ * need more shots on average, or sometimes even if they need fewer, less
+ * and less often as the run cools down. The runs are independent, so they
+ * are executed in parallel. The simulated games are played with makeShot
+ * and taken back with unmakeShot, so the search allocates almost nothing.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class HardBoardGenerator {
+    /**
+     * The AI levels scoring the boards. Only the endgame solver reacts to
+     * the placement; the random search of the levels 2 and 3 needs the same
+     * number of shots on every board.
+     */
+    public static final int[] DEFAULT_AI_LEVELS = {5};
+    private static final double START_TEMPERATURE = 2.0;
+    private static final double END_TEMPERATURE = 0.05;
+
+    private final BoardConfiguration configuration;
+    private final int[] levels;
+    private final int gamesPerScore;
+    private final int steps;
+
+    /**
+     * Constructor of the class
+     * @param configuration The size and fleet of the boards
+     * @param levels The AI levels scoring the boards
+     * @param gamesPerScore The number of games per AI level to score one board
+     * @param steps The number of moved ships per annealing run
+     */
+    public HardBoardGenerator(BoardConfiguration configuration, int[] levels, int gamesPerScore, int steps) {
+        this.configuration = configuration;
+        this.levels = levels.clone();
+        this.gamesPerScore = gamesPerScore;
+        this.steps = steps;
+    }
+
+    /**
+     * Generates hard boards on all cores and writes them to "hardBoards.save"
+     * @param args Optional: the number of boards (default 32) and the steps
+     *             per board (default 200)
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int steps = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        HardBoardGenerator generator = new HardBoardGenerator(BoardConfiguration.DEFAULT, DEFAULT_AI_LEVELS, 16, steps);
+        HardBoardLibrary library = generator.generate(count, Runtime.getRuntime().availableProcessors());
+        double sum = 0;
+        for (int i = 0; i < library.size(); i++)
+            sum += library.getScore(i);
+        double randomSum = 0;
+        for (int i = 0; i < 16; i++)
+            randomSum += generator.score(new Board(BoardConfiguration.DEFAULT), 16);
+        System.out.printf("%d Bretter erzeugt, durchschnittlich %.2f Schüsse (zufällige Bretter: %.2f)%n",
+                library.size(), sum / library.size(), randomSum / 16);
+        try {
+            library.save(Path.of("hardBoards.save"));
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Speichern fehlgeschlagen.\n");
+        }
+    }
+
+    /**
+     * Runs one annealing run per board in parallel
+     * @param count The number of boards
+     * @param threads The number of threads
+     * @return A library with the found boards
+     */
+    public HardBoardLibrary generate(int count, int threads) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        HardBoardLibrary library = new HardBoardLibrary();
+        for (int i = 0; i < count; i++) {
+            tasks.add(() -> {
+                Board board = anneal();
+                // Score the result again with more games, the search scores are noisy
+                library.add(board, score(board, gamesPerScore * 8));
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> task : executor.invokeAll(tasks))
+                task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Search failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return library;
+    }
+
+    /**
+     * Searches one hard board with simulated annealing
+     * @return The hardest board found
+     */
+    private Board anneal() {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        int nShips = configuration.getShipLengths().length;
+        Board current = new Board(configuration);
+        double currentScore = score(current, gamesPerScore);
+        Board best = current.copy();
+        double bestScore = currentScore;
+        double cooling = Math.pow(END_TEMPERATURE / START_TEMPERATURE, 1.0 / Math.max(1, steps));
+        double temperature = START_TEMPERATURE;
+        for (int step = 0; step < steps; step++, temperature *= cooling) {
+            Board candidate = current.copy();
+            candidate.relocateShip(r.nextInt(nShips));
+            double candidateScore = score(candidate, gamesPerScore);
+            if (candidateScore >= currentScore ||
+                    r.nextDouble() < Math.exp((candidateScore - currentScore) / temperature)) {
+                current = candidate;
+                currentScore = candidateScore;
+                if (currentScore > bestScore) {
+                    best = current.copy();
+                    bestScore = currentScore;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Calculates the average number of shots the AI levels need to sink the
+     * fleet of a board. The board is left unchanged. The searching levels
+     * play without a time budget, so the score does not depend on how many
+     * chains run at the same time.
+     * @param board The unplayed board
+     * @param games The number of games per AI level
+     * @return The average number of shots
+     */
+    public double score(Board board, int games) {
+        long shots = 0;
+        int maxShots = configuration.getSize() * configuration.getSize() * 4;
+        for (int level : levels) {
+            AI ai = new AI(level, board);
+            for (int g = 0; g < games; g++) {
+                for (int shot = 0; shot < maxShots && !board.isWholeFleetSunk(); shot++) {
+                    // No deadline: the solver is bounded by its search space, and a
+                    // time budget would make the score depend on the load of the CPU
+                    Vector2d move = ai.nextMove(Long.MAX_VALUE);
+                    if (board.makeShot(move.x, move.y) == 2)
+                        ai.loseMemory();
+                }
+                shots += board.getUndoDepth();
+                while (board.getUndoDepth() > 0)
+                    board.unmakeShot();
+                ai.reset();
+            }
+        }
+        return (double) shots / (games * levels.length);
+    }
+}
@@ -0,0 +1,100 @@
+package de.htw.battleship;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A collection of precomputed villain boards that are hard to find (see
+ * HardBoardGenerator). Taking a board only copies it, so using a hard board
+ * at the start of a game costs nothing.
+ * The file holds three lines per board: the score (average shots needed by
+ * the AI) and the two lines of Board.exportAsString.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class HardBoardLibrary {
+    private final ArrayList<Board> boards = new ArrayList<Board>();
+    private final ArrayList<Double> scores = new ArrayList<Double>();
+
+    /**
+     * Adds a board to the library
+     * @param board The unplayed board
+     * @param score The average number of shots the AI needed to sink its fleet
+     */
+    public synchronized void add(Board board, double score) {
+        boards.add(board.copy());
+        scores.add(score);
+    }
+
+    /**
+     * Gets the number of boards in the library
+     * @return The number of boards
+     */
+    public synchronized int size() {
+        return boards.size();
+    }
+
+    /**
+     * Gets the score of a board
+     * @param index The index of the board
+     * @return The average number of shots the AI needed to sink its fleet
+     */
+    public synchronized double getScore(int index) {
+        return scores.get(index);
+    }
+
+    /**
+     * Gets a copy of a random board of the library
+     * @return A new board or null if the library is empty
+     */
+    public synchronized Board take() {
+        if (boards.isEmpty())
+            return null;
+        return boards.get(ThreadLocalRandom.current().nextInt(boards.size())).copy();
+    }
+
+    /**
+     * Writes the library into a file
+     * @param path The path of the file
+     * @throws IOException If the file can not be written
+     */
+    public synchronized void save(Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < boards.size(); i++) {
+                writer.write(String.format(Locale.ROOT, "%.3f\n", scores.get(i)));
+                writer.write(boards.get(i).exportAsString());
+            }
+        }
+    }
+
+    /**
+     * Reads a library from a file written by save
+     * @param path The path of the file
+     * @return The loaded library
+     * @throws IOException If the file can not be read
+     */
+    public static HardBoardLibrary load(Path path) throws IOException {
+        HardBoardLibrary library = new HardBoardLibrary();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String score;
+            while ((score = reader.readLine()) != null) {
+                if (score.isEmpty())
+                    continue;
+                String fields = reader.readLine();
+                String ships = reader.readLine();
+                if (fields == null || ships == null)
+                    throw new IOException("Unvollständige Bibliothek: " + path);
+                library.boards.add(new Board(fields, Board.stringToShips(ships)));
+                library.scores.add(Double.parseDouble(score));
+            }
+        }
+        return library;
+    }
+}
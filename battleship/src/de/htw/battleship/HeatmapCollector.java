@@ -0,0 +1,258 @@
+package de.htw.battleship;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects per-field statistics over many simulated games:
+ * how often a field holds a ship after the ship placement, and per AI level
+ * how often a field is the first one hit and at which shot a field is hit
+ * on average. The counters are striped (LongAdder), so any number of
+ * simulation threads can update them without contention.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class HeatmapCollector {
+    private final BoardConfiguration configuration;
+    private final int[] levels;
+    private final StrategyFactory[] strategies;
+    private final int nFields;
+
+    private final LongAdder boards = new LongAdder();
+    private final LongAdder[] shipCounts;
+    private final LongAdder[] games;
+    private final LongAdder[][] firstHitCounts;
+    private final LongAdder[][] hitCounts;
+    private final LongAdder[][] hitShotSums;
+
+    /**
+     * Constructor of the class
+     * @param configuration The size and fleet of the simulated boards
+     * @param levels The AI levels being simulated
+     */
+    public HeatmapCollector(BoardConfiguration configuration, int[] levels) {
+        this.configuration = configuration;
+        this.levels = levels.clone();
+        this.strategies = new StrategyFactory[levels.length];
+        for (int l = 0; l < levels.length; l++)
+            strategies[l] = new AIStrategyFactory(levels[l]);
+        this.nFields = configuration.getSize() * configuration.getSize();
+        this.shipCounts = newCounters(nFields);
+        this.games = newCounters(levels.length);
+        this.firstHitCounts = new LongAdder[levels.length][];
+        this.hitCounts = new LongAdder[levels.length][];
+        this.hitShotSums = new LongAdder[levels.length][];
+        for (int l = 0; l < levels.length; l++) {
+            firstHitCounts[l] = newCounters(nFields);
+            hitCounts[l] = newCounters(nFields);
+            hitShotSums[l] = newCounters(nFields);
+        }
+    }
+
+    /**
+     * Simulates games on all cores, prints the heatmaps and exports them to "heatmaps.csv"
+     * @param args Optional: the number of games per AI level (default 100000)
+     */
+    public static void main(String[] args) {
+        int gamesPerLevel = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        HeatmapCollector collector = new HeatmapCollector(BoardConfiguration.DEFAULT, new int[]{1, 2, 3, 5});
+        collector.simulate(gamesPerLevel, Runtime.getRuntime().availableProcessors());
+        collector.print();
+        try {
+            collector.exportCsv(Path.of("heatmaps.csv"));
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Speichern fehlgeschlagen.\n");
+        }
+    }
+
+    /**
+     * Simulates the given number of games per AI level in parallel
+     * @param gamesPerLevel The number of games per AI level
+     * @param threads The number of simulation threads
+     */
+    public void simulate(int gamesPerLevel, int threads) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int t = 0; t < threads; t++) {
+            int share = gamesPerLevel / threads + (t < gamesPerLevel % threads ? 1 : 0);
+            tasks.add(() -> {
+                for (int g = 0; g < share; g++) {
+                    for (int l = 0; l < levels.length; l++)
+                        simulateGame(l);
+                }
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> task : executor.invokeAll(tasks))
+                task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Simulation failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Plays one game of an AI level against a new board and records it
+     * @param l The index of the AI level in the levels array
+     */
+    private void simulateGame(int l) {
+        SimulationContext context = SimulationContext.get(configuration);
+        Board board = context.newBoard(0);
+        recordPlacement(board);
+        Strategy ai = context.strategy(0, strategies[l]);
+        int size = configuration.getSize();
+        int maxShots = nFields * 4;
+        boolean hitBefore = false;
+        for (int shot = 0; shot < maxShots && !board.isWholeFleetSunk(); shot++) {
+            Vector2d move = ai.nextMove();
+            int result = board.shoot(move);
+            ai.shotResult(move, result);
+            if (result == 0)
+                continue;
+            int field = move.y * size + move.x;
+            if (!hitBefore) {
+                firstHitCounts[l][field].increment();
+                hitBefore = true;
+            }
+            hitCounts[l][field].increment();
+            hitShotSums[l][field].add(shot);
+        }
+        games[l].increment();
+    }
+
+    /**
+     * Records which fields of a newly generated board hold a ship
+     * @param board The newly generated board
+     */
+    public void recordPlacement(Board board) {
+        int size = board.getSize();
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                if (board.getField(x, y) == Board.SHIP)
+                    shipCounts[y * size + x].increment();
+            }
+        }
+        boards.increment();
+    }
+
+    /**
+     * Calculates how often every field holds a ship after the placement
+     * @return The ratio of boards with a ship on the field, indexed by y * size + x
+     */
+    public double[] shipHeatmap() {
+        return ratios(shipCounts, boards.sum());
+    }
+
+    /**
+     * Calculates how often every field is the first one hit by an AI level
+     * @param l The index of the AI level in the levels array
+     * @return The ratio of games the field was hit first, indexed by y * size + x
+     */
+    public double[] firstHitHeatmap(int l) {
+        return ratios(firstHitCounts[l], games[l].sum());
+    }
+
+    /**
+     * Calculates the average shot at which an AI level hits every field
+     * @param l The index of the AI level in the levels array
+     * @return The average (0 based) shot index, indexed by y * size + x
+     */
+    public double[] averageHitShotHeatmap(int l) {
+        double[] averages = new double[nFields];
+        for (int i = 0; i < nFields; i++) {
+            long count = hitCounts[l][i].sum();
+            averages[i] = count == 0 ? 0 : (double) hitShotSums[l][i].sum() / count;
+        }
+        return averages;
+    }
+
+    /**
+     * Prints all heatmaps with the board rendering
+     */
+    public void print() {
+        int size = configuration.getSize();
+        System.out.printf("Schiffe nach der Platzierung (%d Bretter):%n", boards.sum());
+        Board.printHeatmap(shipHeatmap(), size);
+        for (int l = 0; l < levels.length; l++) {
+            System.out.printf("%nKI Stufe %d, erster Treffer (%d Spiele):%n", levels[l], games[l].sum());
+            Board.printHeatmap(firstHitHeatmap(l), size);
+            System.out.printf("%nKI Stufe %d, durchschnittlicher Schuss des Treffers:%n", levels[l]);
+            Board.printHeatmap(averageHitShotHeatmap(l), size);
+        }
+    }
+
+    /**
+     * Exports all heatmaps into one CSV file with one line per statistic and field
+     * @param path The path of the CSV file
+     * @throws IOException If the file can not be written
+     */
+    public void exportCsv(Path path) throws IOException {
+        int size = configuration.getSize();
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write("statistic,level,x,y,value\n");
+            writeCsvRows(writer, "ships", -1, shipHeatmap(), size);
+            for (int l = 0; l < levels.length; l++) {
+                writeCsvRows(writer, "firstHit", levels[l], firstHitHeatmap(l), size);
+                writeCsvRows(writer, "averageHitShot", levels[l], averageHitShotHeatmap(l), size);
+            }
+        }
+    }
+
+    /**
+     * Writes the CSV lines of one heatmap
+     * @param writer The writer of the CSV file
+     * @param statistic The name of the statistic
+     * @param level The AI level or -1 if the statistic does not depend on it
+     * @param values The values of the heatmap
+     * @param size The width and height of the heatmap
+     * @throws IOException If the file can not be written
+     */
+    private static void writeCsvRows(BufferedWriter writer, String statistic, int level,
+                                     double[] values, int size) throws IOException {
+        for (int i = 0; i < values.length; i++)
+            writer.write(String.format(Locale.ROOT, "%s,%d,%d,%d,%f\n",
+                    statistic, level, i % size, i / size, values[i]));
+    }
+
+    /**
+     * Divides every counter by a total
+     * @param counters The counters
+     * @param total The total
+     * @return The ratios
+     */
+    private static double[] ratios(LongAdder[] counters, long total) {
+        double[] ratios = new double[counters.length];
+        for (int i = 0; i < counters.length; i++)
+            ratios[i] = total == 0 ? 0 : (double) counters[i].sum() / total;
+        return ratios;
+    }
+
+    /**
+     * Creates an array of new counters
+     * @param n The number of counters
+     * @return The array of counters
+     */
+    private static LongAdder[] newCounters(int n) {
+        LongAdder[] counters = new LongAdder[n];
+        for (int i = 0; i < n; i++)
+            counters[i] = new LongAdder();
+        return counters;
+    }
+}
@@ -1,5 +1,10 @@
 package de.htw.battleship;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 
 /**
@@ -7,10 +12,17 @@ import java.util.ArrayList;
  * just a wrapper for an ArrayList of type Score with the possibility to
  * add items, keep the List at a certain length, print the High Score List
  * to the console and export the High Score List as a string.
+ * The list can also be written as a versioned snapshot, so the lists of
+ * several nodes can be merged into a global leaderboard (see LeaderboardMerger).
  * @author Michael Draga
  * @version 1.0
  */
 public class HighScores {
+    /**
+     * Magic number at the start of every snapshot file
+     */
+    static final int SNAPSHOT_MAGIC = 0x42534853;
+
     private ArrayList<Score> highScores = new ArrayList<>();
 
     /**
@@ -81,4 +93,28 @@ public class HighScores {
         }
         return stringBuilder.toString();
     }
+
+    /**
+     * Writes the list as a snapshot: magic number, node id (UTF), version
+     * (long), number of scores (int) and the scores sorted from best to
+     * worst, each as score (int) and player name (UTF). The version has to
+     * grow with every snapshot of a node (see NodeIdentity), so a merge can
+     * keep the newest snapshot of every node.
+     * @param path The path of the snapshot file
+     * @param nodeId The id of the node the list belongs to
+     * @param version The version of the snapshot
+     * @throws IOException If the file can not be written
+     */
+    public synchronized void writeSnapshot(Path path, String nodeId, long version) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeUTF(nodeId);
+            out.writeLong(version);
+            out.writeInt(highScores.size());
+            for (Score score : highScores) {
+                out.writeInt(score.getScore());
+                out.writeUTF(score.getPlayerName());
+            }
+        }
+    }
 }
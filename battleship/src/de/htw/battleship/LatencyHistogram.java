@@ -0,0 +1,99 @@
+package de.htw.battleship;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in nanoseconds with a high dynamic range.
+ * Values below 2048 ns are counted exactly; larger values are counted in
+ * buckets of 1024 steps per power of two, so every recorded value keeps a
+ * relative precision of 0.1 % from nanoseconds up to minutes with a fixed
+ * amount of memory. Any number of threads can record at the same time.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 10;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * The largest power of two that can be recorded, larger values are
+     * counted as the largest value (2^40 ns are about 18 minutes)
+     */
+    private static final int MAX_EXPONENT = 40;
+
+    private final AtomicLongArray counts =
+            new AtomicLongArray(2 * SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS);
+
+    /**
+     * Records one latency
+     * @param nanos The latency in nanoseconds
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(indexOf(Math.max(0, nanos)));
+    }
+
+    /**
+     * Gets the number of recorded latencies
+     * @return The number of recorded latencies
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++)
+            count += counts.get(i);
+        return count;
+    }
+
+    /**
+     * Calculates a percentile of the recorded latencies
+     * @param percentile The percentile between 0 and 100, e.g. 99.9
+     * @return The latency in nanoseconds that the given percentage of the
+     * recorded latencies does not exceed, or 0 if nothing has been recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = getCount();
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return highestValueOf(i);
+        }
+        return highestValueOf(counts.length() - 1);
+    }
+
+    /**
+     * Removes all recorded latencies
+     */
+    public void clear() {
+        for (int i = 0; i < counts.length(); i++)
+            counts.set(i, 0);
+    }
+
+    /**
+     * Calculates the bucket of a value
+     * @param value The value (not negative)
+     * @return The index of the bucket
+     */
+    private int indexOf(long value) {
+        if (value < 2 * SUB_BUCKETS)
+            return (int) value;
+        int exponent = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_EXPONENT - 1);
+        int shift = exponent - SUB_BUCKET_BITS;
+        long mantissa = Math.min(value >>> shift, 2 * SUB_BUCKETS - 1);
+        return 2 * SUB_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) (mantissa - SUB_BUCKETS);
+    }
+
+    /**
+     * Calculates the largest value counted in a bucket
+     * @param index The index of the bucket
+     * @return The largest value of the bucket
+     */
+    private long highestValueOf(int index) {
+        if (index < 2 * SUB_BUCKETS)
+            return index;
+        int shift = (index - 2 * SUB_BUCKETS) / SUB_BUCKETS + 1;
+        long mantissa = (index - 2 * SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
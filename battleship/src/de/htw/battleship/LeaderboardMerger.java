@@ -0,0 +1,255 @@
+package de.htw.battleship;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Merges the high score snapshots of several nodes (see
+ * HighScores.writeSnapshot) into a global top list and rank statistics.
+ * The snapshots are sorted, so they are merged like sorted runs: a priority
+ * queue holds the current score of every snapshot and the best one is taken
+ * next. Only one score per snapshot is in memory at a time, plus the top
+ * list and one counter per distinct score.
+ * Of every node only the snapshot with the highest version is merged, so
+ * submitting the same or an older snapshot again changes nothing.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class LeaderboardMerger {
+    private final int topSize;
+
+    /**
+     * Constructor of the class
+     * @param topSize The number of scores in the global top list
+     */
+    public LeaderboardMerger(int topSize) {
+        this.topSize = topSize;
+    }
+
+    /**
+     * Merges the given snapshot files and prints the global leaderboard
+     * @param args The size of the top list followed by the paths of the snapshot files
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Aufruf: LeaderboardMerger <Anzahl> <Snapshot>...");
+            return;
+        }
+        List<Path> snapshots = new ArrayList<Path>();
+        for (int i = 1; i < args.length; i++)
+            snapshots.add(Path.of(args[i]));
+        try {
+            System.out.print(new LeaderboardMerger(Integer.parseInt(args[0])).merge(snapshots));
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Laden fehlgeschlagen.\n");
+        }
+    }
+
+    /**
+     * Merges snapshots into a global leaderboard
+     * @param snapshots The paths of the snapshot files, in any order and
+     *                  possibly with several versions of the same node
+     * @return The global top list and rank statistics
+     * @throws IOException If a snapshot can not be read
+     */
+    public Result merge(List<Path> snapshots) throws IOException {
+        // Choose the newest snapshot of every node by reading the headers only
+        Map<String, Cursor> newest = new HashMap<String, Cursor>();
+        try {
+            for (Path path : snapshots) {
+                Cursor cursor = new Cursor(path);
+                Cursor known = newest.get(cursor.nodeId);
+                if (known == null || cursor.version > known.version) {
+                    newest.put(cursor.nodeId, cursor);
+                    if (known != null)
+                        known.close();
+                } else {
+                    cursor.close();
+                }
+            }
+
+            PriorityQueue<Cursor> queue = new PriorityQueue<Cursor>((a, b) -> a.score != b.score ?
+                    Integer.compare(a.score, b.score) : a.nodeId.compareTo(b.nodeId));
+            for (Cursor cursor : newest.values()) {
+                if (cursor.advance())
+                    queue.add(cursor);
+            }
+            Result result = new Result(newest.size());
+            while (!queue.isEmpty()) {
+                Cursor cursor = queue.poll();
+                result.add(cursor.score, cursor.playerName, topSize);
+                if (cursor.advance())
+                    queue.add(cursor);
+            }
+            return result;
+        } finally {
+            for (Cursor cursor : newest.values())
+                cursor.close();
+        }
+    }
+
+    /**
+     * A snapshot file being read score by score
+     */
+    private static class Cursor {
+        final String nodeId;
+        final long version;
+        private final DataInputStream in;
+        private int remaining;
+        int score;
+        String playerName;
+
+        /**
+         * Opens a snapshot and reads its header
+         * @param path The path of the snapshot file
+         * @throws IOException If the file can not be read or is not a snapshot
+         */
+        Cursor(Path path) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+            try {
+                if (in.readInt() != HighScores.SNAPSHOT_MAGIC)
+                    throw new IOException("Kein High-Score-Snapshot: " + path);
+                this.nodeId = in.readUTF();
+                this.version = in.readLong();
+                this.remaining = in.readInt();
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Reads the next score
+         * @return Whether there was another score
+         * @throws IOException If the file can not be read
+         */
+        boolean advance() throws IOException {
+            if (remaining == 0)
+                return false;
+            remaining--;
+            this.score = in.readInt();
+            this.playerName = in.readUTF();
+            return true;
+        }
+
+        /**
+         * Closes the file
+         * @throws IOException If the file can not be closed
+         */
+        void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * The global leaderboard: the best scores of all nodes and the number
+     * of scores per score value, from which the rank of any score follows
+     */
+    public static class Result {
+        private final int nodeCount;
+        private final ArrayList<Score> topScores = new ArrayList<Score>();
+        private final TreeMap<Integer, Long> counts = new TreeMap<Integer, Long>();
+        private long totalCount = 0;
+
+        /**
+         * Constructor of the class
+         * @param nodeCount The number of merged nodes
+         */
+        Result(int nodeCount) {
+            this.nodeCount = nodeCount;
+        }
+
+        /**
+         * Adds the next score of the merge, scores arrive from best to worst
+         * @param score The number of shots
+         * @param playerName The name of the player
+         * @param topSize The number of scores in the top list
+         */
+        void add(int score, String playerName, int topSize) {
+            if (topScores.size() < topSize)
+                topScores.add(new Score(playerName, score));
+            counts.merge(score, 1L, Long::sum);
+            totalCount++;
+        }
+
+        /**
+         * Getter for the nodeCount attribute
+         * @return The number of merged nodes
+         */
+        public int getNodeCount() {
+            return nodeCount;
+        }
+
+        /**
+         * Getter for the topScores attribute
+         * @return The best scores of all nodes, from best to worst
+         */
+        public List<Score> getTopScores() {
+            return Collections.unmodifiableList(topScores);
+        }
+
+        /**
+         * Getter for the totalCount attribute
+         * @return The number of merged scores
+         */
+        public long getTotalCount() {
+            return totalCount;
+        }
+
+        /**
+         * Calculates the global rank a score would have
+         * @param score The number of shots
+         * @return 1 plus the number of merged scores that are better
+         */
+        public long getRank(int score) {
+            long better = 0;
+            for (long count : counts.headMap(score).values())
+                better += count;
+            return better + 1;
+        }
+
+        /**
+         * Calculates the score at a percentile of all merged scores
+         * @param percentile The percentile (0 to 100)
+         * @return The number of shots at the percentile or -1 if there are no scores
+         */
+        public int getPercentile(double percentile) {
+            if (totalCount == 0)
+                return -1;
+            long target = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+            long seen = 0;
+            for (Map.Entry<Integer, Long> entry : counts.entrySet()) {
+                seen += entry.getValue();
+                if (seen >= target)
+                    return entry.getKey();
+            }
+            return counts.lastKey();
+        }
+
+        /**
+         * Converts the leaderboard into a printable string
+         * @return The top list and the statistics
+         */
+        public String toString() {
+            StringBuilder builder = new StringBuilder("Globale High Scores:\n");
+            builder.append("Place    Score    Name\n");
+            for (int i = 0; i < topScores.size(); i++)
+                builder.append(String.format("%d        %d        %s%n", i + 1, topScores.get(i).getScore(),
+                        topScores.get(i).getPlayerName()));
+            builder.append(String.format("%d Scores von %d Knoten, Median %d Schüsse%n", totalCount, nodeCount,
+                    getPercentile(50)));
+            return builder.toString();
+        }
+    }
+}
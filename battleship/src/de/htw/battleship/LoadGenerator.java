@@ -0,0 +1,200 @@
+package de.htw.battleship;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A synthetic client driver for the server mode. It opens a growing number
+ * of sessions in a SessionManager and plays them all at once, using an AI
+ * level to choose the shots of the players. Every move is timed from the
+ * request to the answer of the villain, so the report shows how latency
+ * and throughput change with the number of concurrent games.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class LoadGenerator {
+    private final SessionManager manager;
+    private final StrategyFactory players;
+    private final int villainLevel;
+    private final int threads;
+
+    /**
+     * Constructor of the class
+     * @param manager The sessions being played
+     * @param playerLevel The AI level choosing the shots of the players
+     * @param villainLevel The AI level of the villains
+     * @param threads The number of client threads sending moves
+     */
+    public LoadGenerator(SessionManager manager, int playerLevel, int villainLevel, int threads) {
+        this.manager = manager;
+        this.players = new AIStrategyFactory(playerLevel);
+        this.villainLevel = villainLevel;
+        this.threads = threads;
+    }
+
+    /**
+     * Doubles the number of concurrent sessions from 1 up to a maximum and
+     * prints latency percentiles and throughput of every step
+     * @param args Optional: the maximum number of sessions (default 4096),
+     *             the seconds per step (default 5), the AI level of
+     *             players and villains (default 3) and a memory budget for
+     *             the games in MB (default: none, evicted games are written to "sessions")
+     */
+    public static void main(String[] args) {
+        int maxSessions = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int level = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        SessionManager manager = args.length > 3 ?
+                new SessionManager(Long.parseLong(args[3]) * 1024 * 1024, Path.of("sessions")) :
+                new SessionManager();
+
+        LoadGenerator generator = new LoadGenerator(manager, level, level,
+                Runtime.getRuntime().availableProcessors());
+        for (int sessions = 1; sessions <= maxSessions; sessions *= 2)
+            System.out.println(generator.run(sessions, seconds * 1_000_000_000L));
+        if (manager.getEvictionCount() > 0)
+            System.out.printf("%d Spiele ausgelagert, %d wieder geladen%n",
+                    manager.getEvictionCount(), manager.getRehydrationCount());
+    }
+
+    /**
+     * Keeps a number of sessions open and plays them for some time.
+     * Finished games are replaced by new ones.
+     * @param sessions The number of concurrent sessions
+     * @param durationNanos The duration of the measurement
+     * @return The measured latencies and throughput
+     */
+    public StepResult run(int sessions, long durationNanos) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        LongAdder games = new LongAdder();
+        int nThreads = Math.min(threads, sessions);
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        long start = System.nanoTime();
+        long end = start + durationNanos;
+        for (int t = 0; t < nThreads; t++) {
+            int share = sessions / nThreads + (t < sessions % nThreads ? 1 : 0);
+            tasks.add(() -> {
+                Client[] clients = new Client[share];
+                for (int c = 0; c < share; c++)
+                    clients[c] = new Client();
+                try {
+                    // Every thread plays its sessions in turns, like players thinking between their moves
+                    while (System.nanoTime() < end) {
+                        for (int c = 0; c < share; c++) {
+                            if (clients[c].move(histogram)) {
+                                clients[c].close();
+                                clients[c] = new Client();
+                                games.increment();
+                            }
+                        }
+                    }
+                } finally {
+                    for (Client client : clients)
+                        client.close();
+                }
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> task : executor.invokeAll(tasks))
+                task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Load test failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - start;
+        Runtime runtime = Runtime.getRuntime();
+        return new StepResult(sessions, histogram, games.sum(), elapsed,
+                runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    /**
+     * One simulated player with an open session and its own view of the
+     * board it shoots at
+     */
+    private class Client {
+        final long id;
+        final Board view;
+        final Strategy strategy;
+
+        Client() {
+            this.id = manager.open(villainLevel, "Last");
+            this.view = manager.copyVillainBoard(id);
+            this.strategy = players.create(view);
+        }
+
+        /**
+         * Sends one move and records its latency
+         * @param histogram The histogram of the latencies
+         * @return Whether the game is over
+         */
+        boolean move(LatencyHistogram histogram) {
+            Vector2d shot = strategy.nextMove();
+            long start = System.nanoTime();
+            SessionManager.Turn turn = manager.move(id, shot);
+            histogram.record(System.nanoTime() - start);
+            view.shoot(shot);
+            strategy.shotResult(shot, turn.getResult());
+            return turn.isFinished();
+        }
+
+        void close() {
+            manager.close(id);
+        }
+    }
+
+    /**
+     * Holds the measurements of one number of concurrent sessions.
+     */
+    public static class StepResult {
+        final int sessions;
+        final long moves;
+        final long games;
+        final long elapsedNanos;
+        final long p50;
+        final long p99;
+        final long p999;
+        final long usedMemory;
+
+        StepResult(int sessions, LatencyHistogram histogram, long games, long elapsedNanos, long usedMemory) {
+            this.sessions = sessions;
+            this.moves = histogram.getCount();
+            this.games = games;
+            this.elapsedNanos = elapsedNanos;
+            this.p50 = histogram.getPercentile(50);
+            this.p99 = histogram.getPercentile(99);
+            this.p999 = histogram.getPercentile(99.9);
+            this.usedMemory = usedMemory;
+        }
+
+        /**
+         * Calculates the number of moves per second
+         * @return The throughput in moves per second
+         */
+        public double getMovesPerSecond() {
+            return moves * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * Converts the result into a line of the load test report
+         * @return The string representation of the result
+         */
+        public String toString() {
+            return String.format("%6d Sitzungen: %9.0f Züge/s, %6d Spiele, p50 %8.1f µs, p99 %8.1f µs, " +
+                            "p99.9 %8.1f µs, Speicher %5d MB",
+                    sessions, getMovesPerSecond(), games, p50 / 1000.0, p99 / 1000.0, p999 / 1000.0,
+                    usedMemory / (1024 * 1024));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package de.htw.battleship;
+
+/**
+ * Plays one headless game between two strategies following the rules of
+ * BattleshipGame: the sides take turns and a side keeps shooting as long as
+ * it hits.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class Match {
+    /**
+     * Result code: the first strategy won
+     */
+    public static final int FIRST_WON = 1;
+    /**
+     * Result code: the second strategy won
+     */
+    public static final int SECOND_WON = -1;
+    /**
+     * Result code: no side sank the other fleet within the turn limit
+     */
+    public static final int DRAW = 0;
+
+    private final BoardConfiguration configuration;
+    private final int maxTurns;
+
+    /**
+     * Constructor of the class
+     * @param configuration The size and fleet of the boards
+     */
+    public Match(BoardConfiguration configuration) {
+        this.configuration = configuration;
+        // Strategies that never hit (e.g. AI level 0) need a limit
+        this.maxTurns = configuration.getSize() * configuration.getSize() * 4;
+    }
+
+    /**
+     * Plays one game on two newly generated boards. The boards and strategies
+     * are reused from the SimulationContext of the current thread.
+     * @param first The factory of the first strategy
+     * @param second The factory of the second strategy
+     * @param firstStarts Whether the first strategy shoots first
+     * @return The result code (FIRST_WON, SECOND_WON or DRAW if both sides
+     * used up their turns)
+     */
+    public int play(StrategyFactory first, StrategyFactory second, boolean firstStarts) {
+        SimulationContext context = SimulationContext.get(configuration);
+        Board firstBoard = context.newBoard(0);
+        Board secondBoard = context.newBoard(1);
+        Strategy firstStrategy = context.strategy(1, first);
+        Strategy secondStrategy = context.strategy(0, second);
+        boolean firstsTurn = firstStarts;
+        for (int turns = 0; turns < maxTurns * 2; turns++) {
+            if (firstsTurn && turn(firstStrategy, secondBoard))
+                return FIRST_WON;
+            if (!firstsTurn && turn(secondStrategy, firstBoard))
+                return SECOND_WON;
+            firstsTurn = !firstsTurn;
+        }
+        return DRAW;
+    }
+
+    /**
+     * Lets a strategy shoot until it misses or sinks the whole fleet
+     * @param strategy The strategy shooting
+     * @param board The board being shot at
+     * @return Whether the whole fleet is sunk
+     */
+    private boolean turn(Strategy strategy, Board board) {
+        int result;
+        do {
+            Vector2d shot = strategy.nextMove();
+            result = board.shoot(shot);
+            strategy.shotResult(shot, result);
+            if (board.isWholeFleetSunk())
+                return true;
+        } while (result > 0);
+        return false;
+    }
+}
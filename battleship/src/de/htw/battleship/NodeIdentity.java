@@ -0,0 +1,84 @@
+package de.htw.battleship;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+/**
+ * The identity of one node (an installation of the game) for the high score
+ * snapshots (see HighScores.writeSnapshot): a random id that is created
+ * once, and the version of the last snapshot. Both are kept in a file, so
+ * they stay the same across restarts. The versions are counted instead of
+ * taken from the clock, so they keep growing even if the clock is set back.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class NodeIdentity {
+    private final Path path;
+    private final String id;
+    private long lastSnapshotVersion;
+
+    /**
+     * Constructor of the class
+     * @param path The path of the file the identity is kept in
+     * @param id The id of the node
+     * @param lastSnapshotVersion The version of the last snapshot (0 if there was none)
+     */
+    private NodeIdentity(Path path, String id, long lastSnapshotVersion) {
+        this.path = path;
+        this.id = id;
+        this.lastSnapshotVersion = lastSnapshotVersion;
+    }
+
+    /**
+     * Reads the identity of this node from a file, or creates a new one with
+     * a random id and writes it to the file if the file does not exist
+     * @param path The path of the file
+     * @return The identity of the node
+     * @throws IOException If the file can not be read or written
+     */
+    public static NodeIdentity load(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            NodeIdentity node = new NodeIdentity(path, UUID.randomUUID().toString(), 0);
+            node.save();
+            return node;
+        }
+        String[] lines = Files.readString(path, StandardCharsets.UTF_8).split("\n");
+        try {
+            return new NodeIdentity(path, lines[0].trim(), Long.parseLong(lines[1].trim()));
+        } catch (RuntimeException e) {
+            throw new IOException("Knotendatei beschädigt: " + path, e);
+        }
+    }
+
+    /**
+     * Getter for the id attribute
+     * @return The id of the node
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Counts up the snapshot version. The new version is written to the
+     * file before it is used, so no version is handed out twice, even if
+     * the snapshot itself is never written.
+     * @return The version of the next snapshot
+     * @throws IOException If the file can not be written
+     */
+    public synchronized long nextSnapshotVersion() throws IOException {
+        lastSnapshotVersion++;
+        save();
+        return lastSnapshotVersion;
+    }
+
+    /**
+     * Writes the id and the last snapshot version to the file
+     * @throws IOException If the file can not be written
+     */
+    private void save() throws IOException {
+        Files.writeString(path, id + "\n" + lastSnapshotVersion + "\n", StandardCharsets.UTF_8);
+    }
+}
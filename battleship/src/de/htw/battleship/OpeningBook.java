@@ -0,0 +1,349 @@
+package de.htw.battleship;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An instance of this class answers the first shots of a game with a
+ * lookup instead of a search. Nothing is known about the board at the start
+ * of a game, so the best shots for the first few hit/miss histories are the
+ * same in every game and can be computed offline (see main).
+ * The book always shoots at the field most placements cover, which is how
+ * level 5 hunts, so only level 5 uses a book. Every other level hunts
+ * differently (level 3 shoots at random fields until it hits) and would
+ * play far above its level with it.
+ * The book is a sorted table of entries (key of the visible board, field of
+ * the best shot). The key only covers what a human player could see: the
+ * misses, the hits and which hits belong to sunk ships. The file is
+ * memory-mapped, so loading a book costs nothing and a lookup is a binary
+ * search in the mapped file:
+ * <ul>
+ *     <li>magic number, maximum number of shots and length of the configuration (ints)</li>
+ *     <li>the board configuration (UTF-8, see BoardConfiguration.toString)</li>
+ *     <li>number of entries (int)</li>
+ *     <li>the entries, sorted by key: key (long) and field index y * size + x (int)</li>
+ * </ul>
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class OpeningBook {
+    /**
+     * The default maximum number of shots on a board answered by a book
+     */
+    public static final int DEFAULT_DEPTH = 10;
+
+    private static final int MAGIC = 0x4253424b;
+    private static final int ENTRY_SIZE = 12;
+    private static final int MISS = 1;
+    private static final int HIT = 2;
+    private static final int SUNK = 3;
+    /**
+     * A position is only added to the book if this many sampled boards lead to it
+     */
+    private static final int MIN_SAMPLES = 100;
+
+    /**
+     * The installed book of every AI level, shared by all AIs
+     */
+    private static final OpeningBook[] installed = new OpeningBook[6];
+
+    private final BoardConfiguration configuration;
+    private final int depth;
+    private final int entryCount;
+    private final int entriesOffset;
+    private final ByteBuffer buffer;
+
+    /**
+     * Constructor of the class, reads the header of a book
+     * @param buffer The book as written by save (e.g. the mapped file)
+     * @throws IOException If the buffer does not contain a book
+     */
+    private OpeningBook(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < 12 || buffer.getInt(0) != MAGIC)
+            throw new IOException("Kein Eröffnungsbuch");
+        this.buffer = buffer;
+        this.depth = buffer.getInt(4);
+        int configurationLength = buffer.getInt(8);
+        byte[] configuration = new byte[configurationLength];
+        buffer.duplicate().position(12).get(configuration);
+        this.configuration = BoardConfiguration.parse(new String(configuration, StandardCharsets.UTF_8));
+        this.entryCount = buffer.getInt(12 + configurationLength);
+        this.entriesOffset = 16 + configurationLength;
+        if (buffer.capacity() < entriesOffset + (long) entryCount * ENTRY_SIZE)
+            throw new IOException("Eröffnungsbuch unvollständig");
+    }
+
+    /**
+     * Gets the path of the book file of an AI level
+     * @param level The AI level
+     * @return The path of the file in the working directory
+     */
+    public static Path pathOf(int level) {
+        return Path.of("openingBook-" + level + ".book");
+    }
+
+    /**
+     * Maps a book file into memory
+     * @param path The path of the file
+     * @return The book
+     * @throws IOException If the file can not be read or is not a book
+     */
+    public static OpeningBook load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Checks whether the AIs of a level follow an opening book
+     * @param level The AI level
+     * @return Whether the level hunts by placement density like the book
+     */
+    public static boolean isBookLevel(int level) {
+        return level == 5;
+    }
+
+    /**
+     * Makes a book available to all AIs of a level
+     * @param level The AI level, one that follows a book (see isBookLevel)
+     * @param book The book or null to play every move live
+     */
+    public static void install(int level, OpeningBook book) {
+        if (!isBookLevel(level))
+            throw new IllegalArgumentException("Level " + level + " plays without an opening book");
+        synchronized (installed) {
+            installed[level] = book;
+        }
+    }
+
+    /**
+     * Gets the installed book of an AI level
+     * @param level The AI level
+     * @return The book or null if the level has none
+     */
+    public static OpeningBook forLevel(int level) {
+        if (!isBookLevel(level))
+            return null;
+        synchronized (installed) {
+            return installed[level];
+        }
+    }
+
+    /**
+     * Looks up the best shot for the visible state of a board
+     * @param board The board being shot at
+     * @return The position of the best shot or null if the position is not
+     * in the book (e.g. because the game went on for too long)
+     */
+    public Vector2d lookup(Board board) {
+        int size = board.getSize();
+        if (size != configuration.getSize() || !board.getConfiguration().equals(configuration))
+            return null;
+        long key = 0;
+        int shots = 0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                char field = board.getField(x, y);
+                if (field == Board.MISSED_SHOT)
+                    key ^= fieldKey(y * size + x, MISS);
+                else if (field == Board.HIT)
+                    key ^= fieldKey(y * size + x, board.isPartOfSunkShip(x, y) ? SUNK : HIT);
+                else
+                    continue;
+                if (++shots >= depth)
+                    return null;
+            }
+        }
+        int low = 0;
+        int high = entryCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleKey = buffer.getLong(entriesOffset + middle * ENTRY_SIZE);
+            if (middleKey < key) {
+                low = middle + 1;
+            } else if (middleKey > key) {
+                high = middle - 1;
+            } else {
+                int field = buffer.getInt(entriesOffset + middle * ENTRY_SIZE + 8);
+                return new Vector2d(field % size, field / size);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Getter for the entryCount attribute
+     * @return The number of positions in the book
+     */
+    public int size() {
+        return entryCount;
+    }
+
+    /**
+     * Writes the book into a file
+     * @param path The path of the file
+     * @throws IOException If the file can not be written
+     */
+    public void save(Path path) throws IOException {
+        ByteBuffer content = buffer.duplicate();
+        content.position(0).limit(entriesOffset + entryCount * ENTRY_SIZE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (content.hasRemaining())
+                channel.write(content);
+        }
+    }
+
+    /**
+     * Generates a book and writes it to "openingBook-&lt;level&gt;.book"
+     * @param args The AI level (only 5 has a book, default 5), the maximum number of shots
+     *             (default 10) and the number of sampled boards (default 200000)
+     */
+    public static void main(String[] args) {
+        int level = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_DEPTH;
+        int samples = args.length > 2 ? Integer.parseInt(args[2]) : 200_000;
+        if (!isBookLevel(level)) {
+            System.out.println("Nur die Stufe 5 spielt mit einem Eröffnungsbuch.\n");
+            return;
+        }
+        long start = System.nanoTime();
+        OpeningBook book = generate(BoardConfiguration.DEFAULT, depth, samples);
+        System.out.printf("%d Stellungen in %.1f s berechnet%n", book.size(), (System.nanoTime() - start) / 1e9);
+        try {
+            book.save(pathOf(level));
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Speichern fehlgeschlagen.\n");
+        }
+    }
+
+    /**
+     * Generates a book by simulation: many random boards are generated and
+     * the positions are explored starting with the empty board. The best
+     * shot of a position is the field that holds a ship on most of the
+     * boards that lead to the position. The boards are then split by the
+     * result of that shot, which gives the following positions.
+     * @param configuration The size and fleet of the boards
+     * @param depth The maximum number of shots on a board in the book
+     * @param samples The number of random boards
+     * @return The generated book
+     */
+    public static OpeningBook generate(BoardConfiguration configuration, int depth, int samples) {
+        int nFields = configuration.getSize() * configuration.getSize();
+        // Per board: the number (index + 1) of the ship on every field and the length of every ship
+        byte[][] shipOf = new byte[samples][nFields];
+        byte[][] shipSize = new byte[samples][];
+        for (int s = 0; s < samples; s++) {
+            Board board = new Board(configuration);
+            Ship[] fleet = board.getFleet();
+            shipSize[s] = new byte[fleet.length + 1];
+            for (int i = 0; i < fleet.length; i++) {
+                shipSize[s][i + 1] = (byte) fleet[i].getShipLength();
+                for (int j = 0; j < fleet[i].getShipLength(); j++)
+                    shipOf[s][fleet[i].getCellY(j) * configuration.getSize() + fleet[i].getCellX(j)] = (byte) (i + 1);
+            }
+        }
+        int[] all = new int[samples];
+        for (int s = 0; s < samples; s++)
+            all[s] = s;
+        HashMap<Long, Integer> entries = new HashMap<Long, Integer>();
+        explore(shipOf, shipSize, all, new int[depth], 0, 0L, entries);
+
+        long[] keys = new long[entries.size()];
+        int i = 0;
+        for (long key : entries.keySet())
+            keys[i++] = key;
+        Arrays.sort(keys);
+        byte[] fleet = configuration.toString().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(16 + fleet.length + keys.length * ENTRY_SIZE);
+        buffer.putInt(MAGIC).putInt(depth).putInt(fleet.length).put(fleet).putInt(keys.length);
+        for (long key : keys)
+            buffer.putLong(key).putInt(entries.get(key));
+        try {
+            return new OpeningBook(buffer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Adds the best shot of a position to the book and explores the
+     * positions that follow from it
+     * @param shipOf The number of the ship on every field of every board
+     * @param shipSize The length of every ship of every board
+     * @param samples The boards leading to the position
+     * @param shots The fields shot at so far, in order
+     * @param nShots The number of shots so far
+     * @param key The key of the position
+     * @param entries The book being generated
+     */
+    private static void explore(byte[][] shipOf, byte[][] shipSize, int[] samples, int[] shots, int nShots,
+                                long key, HashMap<Long, Integer> entries) {
+        if (nShots == shots.length || samples.length < MIN_SAMPLES || entries.containsKey(key))
+            return;
+        int nFields = shipOf[0].length;
+        int[] counts = new int[nFields];
+        for (int s : samples) {
+            for (int i = 0; i < nFields; i++) {
+                if (shipOf[s][i] != 0)
+                    counts[i]++;
+            }
+        }
+        for (int i = 0; i < nShots; i++)
+            counts[shots[i]] = -1;
+        int best = 0;
+        for (int i = 1; i < nFields; i++) {
+            if (counts[i] > counts[best])
+                best = i;
+        }
+        entries.put(key, best);
+        shots[nShots] = best;
+
+        // Split the boards by the position the shot leads to
+        HashMap<Long, ArrayList<Integer>> next = new HashMap<Long, ArrayList<Integer>>();
+        for (int s : samples) {
+            int ship = shipOf[s][best];
+            long nextKey;
+            if (ship == 0) {
+                nextKey = key ^ fieldKey(best, MISS);
+            } else {
+                long sunkKey = fieldKey(best, SUNK);
+                int hits = 1;
+                for (int i = 0; i < nShots; i++) {
+                    if (shipOf[s][shots[i]] == ship) {
+                        hits++;
+                        sunkKey ^= fieldKey(shots[i], HIT) ^ fieldKey(shots[i], SUNK);
+                    }
+                }
+                nextKey = hits == shipSize[s][ship] ? key ^ sunkKey : key ^ fieldKey(best, HIT);
+            }
+            next.computeIfAbsent(nextKey, k -> new ArrayList<Integer>()).add(s);
+        }
+        for (Map.Entry<Long, ArrayList<Integer>> entry : next.entrySet()) {
+            int[] nextSamples = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+            explore(shipOf, shipSize, nextSamples, shots, nShots + 1, entry.getKey(), entries);
+        }
+    }
+
+    /**
+     * Calculates the random key of a visible field state
+     * @param index The index of the field (y * size + x)
+     * @param state MISS, HIT or SUNK
+     * @return The key, the key of a board is the XOR of the keys of its fields
+     */
+    private static long fieldKey(int index, int state) {
+        long z = (index * 4L + state) * 0xD1B54A32D192ED03L + 0x632BE59BD9B4E019L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,128 @@
+package de.htw.battleship;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Counts for every field of a board how many legal placements of the
+ * remaining ships cover it, using only what the opponent can see. A field
+ * covered by many placements is the most likely one to hold a ship, so it
+ * is a good shot while no ship is being chased.
+ * The counting is word-parallel: the legal top left corners of a shape are
+ * one mask (see Board.legalAnchors), shifting that mask by each field of
+ * the shape gives the covered fields, and the masks are added to bit
+ * sliced counters (see BitCounter). Every step handles 64 fields per long
+ * operation, so the work grows with the number of fields divided by 64.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class PlacementDensity {
+
+    /**
+     * Counts the placements of the remaining ships per field. Ships of the
+     * same shape are counted once with their number as weight.
+     * @param board The board being shot at
+     * @return The counters, one per field (index y * size + x)
+     */
+    public static BitCounter count(Board board) {
+        int size = board.getSize();
+        BitMask blocked = board.visibleBlockedCells();
+        BitCounter counter = new BitCounter(size * size);
+        ShipShape[] shapes = board.getRemainingShipShapes();
+        boolean[] counted = new boolean[shapes.length];
+        for (int s = 0; s < shapes.length; s++) {
+            if (counted[s])
+                continue;
+            int weight = 0;
+            for (int t = s; t < shapes.length; t++) {
+                if (shapes[t].equals(shapes[s])) {
+                    counted[t] = true;
+                    weight++;
+                }
+            }
+            // A ship of one field has two identical rotations
+            int rotations = shapes[s].getCellCount() == 1 ? 1 : shapes[s].getRotationCount();
+            for (int r = 0; r < rotations; r++) {
+                ShipShape.Rotation rotation = shapes[s].getRotation(r);
+                BitMask anchors = board.legalAnchors(rotation, blocked);
+                BitMask covered = new BitMask(size * size);
+                for (int i = 0; i < rotation.cellX.length; i++) {
+                    covered.clearAll();
+                    covered.orShifted(anchors, rotation.cellY[i] * size + rotation.cellX[i]);
+                    counter.add(covered, weight);
+                }
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Chooses a random field among the fields that have not been shot at
+     * and are covered by the most placements
+     * @param board The board being shot at
+     * @return The position of the field
+     */
+    public static Vector2d densestField(Board board) {
+        int size = board.getSize();
+        BitMask candidates = new BitMask(size * size);
+        candidates.set(0, size * size);
+        candidates.andNot(board.getShotCells());
+        count(board).retainMaximum(candidates);
+        int field = candidates.selectSetBit(ThreadLocalRandom.current().nextInt(Math.max(1, candidates.cardinality())));
+        if (field == -1)
+            field = 0;
+        return new Vector2d(field % size, field / size);
+    }
+
+    /**
+     * Chooses several different fields that have not been shot at, e.g. for
+     * a salvo. The placements are counted once; the preferred fields are
+     * taken first, then the other fields, each from the most covered to
+     * the least covered and at random among equally covered fields.
+     * @param board The board being shot at
+     * @param preferred The fields to take first (e.g. next to hits) or null
+     * @param count The number of fields
+     * @return The indexes (y * size + x) of the fields, fewer if fewer fields are left
+     */
+    public static int[] densestFields(Board board, BitMask preferred, int count) {
+        int size = board.getSize();
+        BitCounter counter = count(board);
+        BitMask unshot = new BitMask(size * size);
+        unshot.set(0, size * size);
+        unshot.andNot(board.getShotCells());
+        int[] fields = new int[count];
+        int n = 0;
+        if (preferred != null) {
+            BitMask candidates = new BitMask(preferred);
+            candidates.and(unshot);
+            n = takeDensest(counter, candidates, unshot, fields, n);
+        }
+        return Arrays.copyOf(fields, takeDensest(counter, new BitMask(unshot), unshot, fields, n));
+    }
+
+    /**
+     * Takes the most covered candidates until enough fields are chosen or
+     * no candidate is left
+     * @param counter The placements per field
+     * @param candidates The fields that may be taken, taken fields are removed
+     * @param unshot The fields that have not been shot at, taken fields are removed
+     * @param fields Receives the taken fields
+     * @param n The number of fields taken so far
+     * @return The number of fields taken in total
+     */
+    private static int takeDensest(BitCounter counter, BitMask candidates, BitMask unshot, int[] fields, int n) {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        while (n < fields.length && !candidates.isEmpty()) {
+            BitMask best = new BitMask(candidates);
+            counter.retainMaximum(best);
+            for (int left = best.cardinality(); left > 0 && n < fields.length; left--) {
+                int field = best.selectSetBit(r.nextInt(left));
+                best.clear(field);
+                candidates.clear(field);
+                unshot.clear(field);
+                fields[n++] = field;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,286 @@
+package de.htw.battleship;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * An instance of this class records a game as a compact replay: the
+ * initial boards (as exported by Board.exportAsString), followed by the
+ * ordered shots. Every shot is stored as the varint encoded difference to
+ * the previous shot. Every KEYFRAME_INTERVAL shots a full snapshot of both
+ * boards is stored, so any move can be restored by loading the nearest
+ * snapshot and applying at most KEYFRAME_INTERVAL - 1 shots.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class Replay {
+    /**
+     * Side code of shots fired by the player (at the villain board)
+     */
+    public static final int PLAYER = 0;
+    /**
+     * Side code of shots fired by the villain (at the player board)
+     */
+    public static final int VILLAIN = 1;
+
+    /**
+     * The default number of shots between two snapshots
+     */
+    public static final int KEYFRAME_INTERVAL = 16;
+
+    private static final int MAGIC = 0x42535250;
+
+    private final Board playerBoard;
+    private final Board villainBoard;
+    private final int keyframeInterval;
+
+    private byte[] shots = new byte[64];
+    private int length = 0;
+    private int shotCount = 0;
+    private int previousValue = 0;
+    private final ArrayList<Keyframe> keyframes = new ArrayList<Keyframe>();
+
+    /**
+     * Starts recording a game. The current state of the boards is the first snapshot.
+     * @param playerBoard The board of the player
+     * @param villainBoard The board of the villain
+     */
+    public Replay(Board playerBoard, Board villainBoard) {
+        this(playerBoard, villainBoard, KEYFRAME_INTERVAL);
+    }
+
+    /**
+     * Starts recording a game. The current state of the boards is the first snapshot.
+     * @param playerBoard The board of the player
+     * @param villainBoard The board of the villain
+     * @param keyframeInterval The number of shots between two snapshots
+     */
+    public Replay(Board playerBoard, Board villainBoard, int keyframeInterval) {
+        this.playerBoard = playerBoard;
+        this.villainBoard = villainBoard;
+        this.keyframeInterval = keyframeInterval;
+        this.keyframes.add(new Keyframe(0, 0, playerBoard.exportAsString(), villainBoard.exportAsString()));
+    }
+
+    /**
+     * Creates a replay whose shots and snapshots are read from a stream
+     * afterwards (see readFrom)
+     * @param keyframeInterval The number of shots between two snapshots
+     * @param playerBoard The board of the player or null if the replay can only be viewed
+     * @param villainBoard The board of the villain or null if the replay can only be viewed
+     */
+    private Replay(int keyframeInterval, Board playerBoard, Board villainBoard) {
+        this.playerBoard = playerBoard;
+        this.villainBoard = villainBoard;
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    /**
+     * Records a shot after it has been applied to the board
+     * @param side The side that fired the shot (PLAYER or VILLAIN)
+     * @param shot The position that was shot at
+     */
+    public void record(int side, Vector2d shot) {
+        int size = playerBoard.getSize();
+        int value = (shot.y * size + shot.x) * 2 + side;
+        int delta = value - previousValue;
+        // Zig-zag encoding keeps small negative differences small
+        writeVarint((delta << 1) ^ (delta >> 31));
+        previousValue = value;
+        shotCount++;
+        if (shotCount % keyframeInterval == 0)
+            keyframes.add(new Keyframe(length, previousValue,
+                    playerBoard.exportAsString(), villainBoard.exportAsString()));
+    }
+
+    /**
+     * Restores both boards as they were after the given number of shots
+     * @param move The number of shots (0 restores the initial boards)
+     * @return An array containing the player board and the villain board
+     */
+    public Board[] seek(int move) {
+        if (move < 0 || move > shotCount)
+            throw new IndexOutOfBoundsException("Move " + move + " of " + shotCount);
+        Keyframe keyframe = keyframes.get(move / keyframeInterval);
+        Board player = Board.fromExportedString(keyframe.playerBoard);
+        Board villain = Board.fromExportedString(keyframe.villainBoard);
+        int size = player.getSize();
+        int position = keyframe.offset;
+        int value = keyframe.previousValue;
+        for (int i = move / keyframeInterval * keyframeInterval; i < move; i++) {
+            int zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = shots[position++];
+                zigzag |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            value += (zigzag >>> 1) ^ -(zigzag & 1);
+            int field = value >> 1;
+            Vector2d shot = new Vector2d(field % size, field / size);
+            if ((value & 1) == PLAYER)
+                villain.shoot(shot);
+            else
+                player.shoot(shot);
+        }
+        return new Board[]{player, villain};
+    }
+
+    /**
+     * Getter for the shotCount attribute
+     * @return The number of recorded shots
+     */
+    public int getShotCount() {
+        return shotCount;
+    }
+
+    /**
+     * Saves the replay into a file
+     * @param path The path of the file
+     * @throws IOException If the file can not be written
+     */
+    public void save(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            writeTo(out);
+        }
+    }
+
+    /**
+     * Writes the replay into a stream, e.g. as part of a saved game
+     * @param out The stream being written to
+     * @throws IOException If the stream can not be written
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(keyframeInterval);
+        out.writeInt(shotCount);
+        out.writeInt(length);
+        out.write(shots, 0, length);
+        out.writeInt(keyframes.size());
+        for (Keyframe keyframe : keyframes) {
+            out.writeInt(keyframe.offset);
+            out.writeInt(keyframe.previousValue);
+            writeString(out, keyframe.playerBoard);
+            writeString(out, keyframe.villainBoard);
+        }
+    }
+
+    /**
+     * Loads a replay from a file
+     * @param path The path of the file
+     * @return The loaded replay, which can be viewed but not continued
+     * @throws IOException If the file can not be read or is not a replay
+     */
+    public static Replay load(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            return readFrom(in, null, null);
+        }
+    }
+
+    /**
+     * Reads a replay written by writeTo. Given the boards of the game in
+     * their state after the last recorded shot, the replay continues
+     * recording the shots of the game.
+     * @param in The stream being read from
+     * @param playerBoard The board of the player or null if the replay is only viewed
+     * @param villainBoard The board of the villain or null if the replay is only viewed
+     * @return The replay
+     * @throws IOException If the stream can not be read or contains no replay
+     */
+    static Replay readFrom(DataInputStream in, Board playerBoard, Board villainBoard) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new IOException("Keine Replay-Daten");
+        Replay replay = new Replay(in.readInt(), playerBoard, villainBoard);
+        replay.shotCount = in.readInt();
+        replay.length = in.readInt();
+        replay.shots = new byte[Math.max(64, replay.length)];
+        in.readFully(replay.shots, 0, replay.length);
+        int nKeyframes = in.readInt();
+        for (int i = 0; i < nKeyframes; i++) {
+            int offset = in.readInt();
+            int previousValue = in.readInt();
+            replay.keyframes.add(new Keyframe(offset, previousValue, readString(in), readString(in)));
+        }
+        // The next shot is stored as the difference to the last one
+        Keyframe last = replay.keyframes.get(replay.keyframes.size() - 1);
+        replay.previousValue = last.previousValue;
+        int position = last.offset;
+        while (position < replay.length) {
+            int zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = replay.shots[position++];
+                zigzag |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            replay.previousValue += (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+        return replay;
+    }
+
+    /**
+     * Appends an unsigned varint (7 bits per byte) to the shot stream
+     * @param value The value being appended
+     */
+    private void writeVarint(int value) {
+        if (length + 5 > shots.length)
+            shots = Arrays.copyOf(shots, shots.length * 2);
+        while ((value & ~0x7F) != 0) {
+            shots[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        shots[length++] = (byte) value;
+    }
+
+    /**
+     * Writes a string of any length (DataOutputStream.writeUTF is limited to 64 KB)
+     * @param out The stream being written to
+     * @param string The string being written
+     * @throws IOException If the stream can not be written
+     */
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by writeString
+     * @param in The stream being read from
+     * @return The string that has been read
+     * @throws IOException If the stream can not be read
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A full snapshot of both boards and the position in the shot stream
+     * where the following shots start.
+     */
+    private static class Keyframe {
+        final int offset;
+        final int previousValue;
+        final String playerBoard;
+        final String villainBoard;
+
+        Keyframe(int offset, int previousValue, String playerBoard, String villainBoard) {
+            this.offset = offset;
+            this.previousValue = previousValue;
+            this.playerBoard = playerBoard;
+            this.villainBoard = villainBoard;
+        }
+    }
+}
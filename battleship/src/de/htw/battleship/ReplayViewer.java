@@ -0,0 +1,52 @@
+package de.htw.battleship;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Scanner;
+
+/**
+ * Shows a recorded Replay on the console. The user enters the number of a
+ * move and the viewer jumps directly to it.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class ReplayViewer {
+
+    /**
+     * Starts the viewer
+     * @param args The path of the replay file (default "battleship.replay")
+     */
+    public static void main(String[] args) {
+        Path path = Path.of(args.length > 0 ? args[0] : "battleship.replay");
+        Replay replay;
+        try {
+            replay = Replay.load(path);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Laden fehlgeschlagen.\n");
+            return;
+        }
+        Scanner scanner = new Scanner(System.in);
+        while (true) {
+            System.out.printf("Zug (0 - %d, ENTER zum Beenden): ", replay.getShotCount());
+            String input = scanner.nextLine();
+            if (input.isEmpty())
+                break;
+            int move;
+            try {
+                move = Integer.parseInt(input.trim());
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (move < 0 || move > replay.getShotCount())
+                continue;
+            Board[] boards = replay.seek(move);
+            System.out.println("\nSpieler:");
+            boards[0].print(false);
+            System.out.println("\nGegner:");
+            boards[1].print(false);
+            System.out.println();
+        }
+        scanner.close();
+    }
+}
@@ -0,0 +1,17 @@
+package de.htw.battleship;
+
+/**
+ * A strategy that can play several games one after another against the
+ * same board object. Simulations reuse such strategies instead of creating
+ * new ones for every game (see SimulationContext); every other strategy
+ * plays exactly one game.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public interface ResettableStrategy extends Strategy {
+    /**
+     * Prepares the strategy for a new game on the same board object after
+     * the board has been reset, forgetting everything about the last game
+     */
+    void reset();
+}
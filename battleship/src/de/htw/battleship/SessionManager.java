@@ -0,0 +1,426 @@
+package de.htw.battleship;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The server mode of the game: holds any number of running games in one
+ * JVM, each identified by a session id. A client only sends the shots of
+ * the player; the answers of the villain AI are played right away and sent
+ * back with the result. Different sessions can be played by different
+ * threads at the same time, moves of one session are executed one after another.
+ * <p>
+ * With a memory budget the manager keeps only the most recently used games
+ * in memory. When the budget is exceeded, the least recently used games are
+ * written to a local directory (see BattleshipGame.save, the replay
+ * included) and dropped; their next move loads them again. Games with
+ * spectators are never evicted.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class SessionManager {
+    /**
+     * Estimated heap usage of the parts of a game that do not depend on the
+     * board size (game, AI, spectator list, session) in bytes
+     */
+    private static final long SESSION_OVERHEAD_BYTES = 1024;
+
+    private final ConcurrentHashMap<Long, Session> sessions = new ConcurrentHashMap<Long, Session>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final long memoryBudget;
+    private final long sessionBytes = estimateSessionBytes(BoardConfiguration.DEFAULT);
+    private final Path store;
+    /**
+     * The games in memory, least recently used first. Guarded by itself.
+     */
+    private final LinkedHashMap<Long, Session> resident = new LinkedHashMap<Long, Session>(16, 0.75f, true);
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong rehydrations = new AtomicLong();
+    private volatile long moveBudgetNanos = AI.DEFAULT_MOVE_BUDGET_NANOS;
+
+    /**
+     * Creates a session manager that keeps all games in memory
+     */
+    public SessionManager() {
+        this(Long.MAX_VALUE, null);
+    }
+
+    /**
+     * Creates a session manager with a memory budget
+     * @param memoryBudget The heap the games may use in bytes
+     * @param store The directory the evicted games are written to
+     */
+    public SessionManager(long memoryBudget, Path store) {
+        if (memoryBudget < Long.MAX_VALUE && store == null)
+            throw new IllegalArgumentException("A memory budget needs a store directory");
+        this.memoryBudget = memoryBudget;
+        this.store = store;
+    }
+
+    /**
+     * Estimates the heap one game uses: two boards (fields, bit masks and
+     * ships) and the replay of a whole game, which keeps both boards as
+     * text every Replay.KEYFRAME_INTERVAL shots
+     * @param configuration The size and fleet of the boards of the game
+     * @return The estimated heap usage in bytes
+     */
+    public static long estimateSessionBytes(BoardConfiguration configuration) {
+        long fields = (long) configuration.getSize() * configuration.getSize();
+        long ships = configuration.getShapes().length;
+        long board = 2 * fields + 3 * fields / 8 + 16L * configuration.getSize() + 64 * ships;
+        // A whole game takes about as many shots as the board has fields
+        long replay = fields + fields / Replay.KEYFRAME_INTERVAL * 2 * (fields + 16 * ships);
+        return SESSION_OVERHEAD_BYTES + 2 * board + replay;
+    }
+
+    /**
+     * Starts a new game
+     * @param AILevel The chosen AI difficulty level
+     * @param playerName The name of the player
+     * @return The id of the new session
+     */
+    public long open(int AILevel, String playerName) {
+        long id = nextId.getAndIncrement();
+        Session session = new Session(id, new BattleshipGame(AILevel, playerName));
+        sessions.put(id, session);
+        touch(session);
+        return id;
+    }
+
+    /**
+     * Ends a session and forgets its game
+     * @param id The id of the session
+     */
+    public void close(long id) {
+        Session session = sessions.remove(id);
+        if (session == null)
+            return;
+        synchronized (resident) {
+            resident.remove(id);
+        }
+        synchronized (session) {
+            if (session.game == null) {
+                try {
+                    Files.deleteIfExists(storeFile(id));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of open sessions
+     * @return The number of open sessions
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Sets the time the villain may spend on the answer to one move of the
+     * player. All shots of the villain in one answer share this budget.
+     * @param moveBudgetNanos The time budget in nanoseconds
+     */
+    public void setMoveBudget(long moveBudgetNanos) {
+        this.moveBudgetNanos = moveBudgetNanos;
+    }
+
+    /**
+     * Gets the number of games currently held in memory
+     * @return The number of resident games
+     */
+    public int getResidentCount() {
+        synchronized (resident) {
+            return resident.size();
+        }
+    }
+
+    /**
+     * Gets the number of games written to the store so far
+     * @return The number of evictions
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Gets the number of games loaded from the store so far
+     * @return The number of rehydrations
+     */
+    public long getRehydrationCount() {
+        return rehydrations.get();
+    }
+
+    /**
+     * Gets a copy of the board the player of a session shoots at
+     * @param id The id of the session
+     * @return A copy of the villain board
+     */
+    public Board copyVillainBoard(long id) {
+        Session session = getSession(id);
+        Board copy;
+        synchronized (session) {
+            copy = residentGame(session).villainBoard.copy();
+        }
+        touch(session);
+        return copy;
+    }
+
+    /**
+     * Executes a shot of the player and, if it missed, the shots of the
+     * villain until the villain misses or the game is over
+     * @param id The id of the session
+     * @param shot The position the player shoots at
+     * @return The results of the shot of the player and the answer of the villain
+     */
+    public Turn move(long id, Vector2d shot) {
+        Session session = getSession(id);
+        Turn turn;
+        synchronized (session) {
+            BattleshipGame game = residentGame(session);
+            if (game.isFinished())
+                throw new IllegalStateException("Game " + id + " is already finished");
+            int result = game.firePlayerShot(shot);
+            ArrayList<Vector2d> villainShots = new ArrayList<Vector2d>();
+            ArrayList<Integer> villainResults = new ArrayList<Integer>();
+            if (result == 0) {
+                long deadline = System.nanoTime() + moveBudgetNanos;
+                int villainResult;
+                do {
+                    Vector2d villainShot = game.villainAI.nextMove(deadline);
+                    villainResult = game.fireVillainShot(villainShot);
+                    villainShots.add(villainShot);
+                    villainResults.add(villainResult);
+                } while (villainResult > 0 && !game.isFinished());
+            }
+            turn = new Turn(result, villainShots, villainResults, game.isFinished(), game.playerWon);
+        }
+        touch(session);
+        return turn;
+    }
+
+    /**
+     * Gets an open session
+     * @param id The id of the session
+     * @return The session
+     */
+    private Session getSession(long id) {
+        Session session = sessions.get(id);
+        if (session == null)
+            throw new IllegalArgumentException("Unknown session " + id);
+        return session;
+    }
+
+    /**
+     * Gets the game of a session, loading it from the store if it has been
+     * evicted. Must be called while holding the lock of the session.
+     * @param session The session
+     * @return The game of the session
+     */
+    private BattleshipGame residentGame(Session session) {
+        session.version++;
+        if (session.game == null) {
+            Path file = storeFile(session.id);
+            try {
+                session.game = BattleshipGame.load(file);
+                session.game.setTargetingModel(session.targeting);
+                session.targeting = null;
+                Files.delete(file);
+            } catch (IOException e) {
+                throw new IllegalStateException("Session " + session.id + " could not be restored", e);
+            }
+            rehydrations.incrementAndGet();
+        }
+        return session.game;
+    }
+
+    /**
+     * Marks a session as the most recently used one and evicts the least
+     * recently used games while the memory budget is exceeded
+     * @param session The session that has just been used
+     */
+    private void touch(Session session) {
+        if (memoryBudget == Long.MAX_VALUE)
+            return;
+        ArrayList<Session> victims = new ArrayList<Session>();
+        ArrayList<Long> versions = new ArrayList<Long>();
+        synchronized (resident) {
+            if (!sessions.containsKey(session.id))
+                return;
+            resident.put(session.id, session);
+            long allowed = memoryBudget / sessionBytes;
+            Iterator<Session> iterator = resident.values().iterator();
+            while (resident.size() - victims.size() > allowed && iterator.hasNext()) {
+                Session victim = iterator.next();
+                if (victim == session)
+                    continue;
+                victims.add(victim);
+                versions.add(victim.version);
+                iterator.remove();
+            }
+        }
+        // The locks of the victims are taken after the lock of the LRU list is released,
+        // a moving session always takes them in the opposite order
+        for (int i = 0; i < victims.size(); i++)
+            evict(victims.get(i), versions.get(i));
+    }
+
+    /**
+     * Writes the game of a session to the store and drops it from memory.
+     * Nothing happens if the session has been used since it was chosen.
+     * @param session The session being evicted
+     * @param version The version of the session when it was chosen
+     */
+    private void evict(Session session, long version) {
+        synchronized (session) {
+            if (session.game == null || session.version != version || !sessions.containsKey(session.id))
+                return;
+            if (session.game.spectators.getSpectatorCount() > 0) {
+                keepResident(session);
+                return;
+            }
+            try {
+                Files.createDirectories(store);
+                session.game.save(storeFile(session.id));
+            } catch (IOException e) {
+                e.printStackTrace();
+                keepResident(session);
+                return;
+            }
+            // The model is shared by all games of the player and stays open
+            session.targeting = session.game.getTargetingModel();
+            session.game = null;
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Puts a session that could not be evicted back into the LRU list
+     * @param session The session
+     */
+    private void keepResident(Session session) {
+        synchronized (resident) {
+            resident.put(session.id, session);
+        }
+    }
+
+    /**
+     * Gets the file an evicted game is stored in
+     * @param id The id of the session
+     * @return The path of the file
+     */
+    private Path storeFile(long id) {
+        return store.resolve("session-" + id + ".save");
+    }
+
+    /**
+     * The state of one session
+     */
+    private static class Session {
+        final long id;
+        /**
+         * The game or null while it is evicted. Guarded by the session.
+         */
+        BattleshipGame game;
+        /**
+         * The targeting model of the game while it is evicted. Guarded by the session.
+         */
+        TargetingModel targeting;
+        /**
+         * Counts the uses of the session, so an eviction can notice that the
+         * session has been used since it was chosen
+         */
+        volatile long version = 0;
+
+        Session(long id, BattleshipGame game) {
+            this.id = id;
+            this.game = game;
+        }
+    }
+
+    /**
+     * The answer to a move of the player
+     */
+    public static class Turn {
+        /**
+         * The result code of the shot of the player (see Board.shoot)
+         */
+        final int result;
+        /**
+         * The shots of the villain after the player missed, in order
+         */
+        final Vector2d[] villainShots;
+        /**
+         * The result codes of the shots of the villain
+         */
+        final int[] villainResults;
+        final boolean finished;
+        final boolean playerWon;
+
+        /**
+         * Constructor of the class
+         * @param result The result code of the shot of the player
+         * @param villainShots The shots of the villain
+         * @param villainResults The result codes of the shots of the villain
+         * @param finished Whether the game is over
+         * @param playerWon Whether the player has won
+         */
+        Turn(int result, ArrayList<Vector2d> villainShots, ArrayList<Integer> villainResults,
+             boolean finished, boolean playerWon) {
+            this.result = result;
+            this.villainShots = villainShots.toArray(new Vector2d[0]);
+            this.villainResults = new int[villainResults.size()];
+            for (int i = 0; i < this.villainResults.length; i++)
+                this.villainResults[i] = villainResults.get(i);
+            this.finished = finished;
+            this.playerWon = playerWon;
+        }
+
+        /**
+         * Getter for the result attribute
+         * @return The result code of the shot of the player
+         */
+        public int getResult() {
+            return result;
+        }
+
+        /**
+         * Getter for the villainShots attribute
+         * @return The shots of the villain, in order
+         */
+        public Vector2d[] getVillainShots() {
+            return villainShots.clone();
+        }
+
+        /**
+         * Getter for the villainResults attribute
+         * @return The result codes of the shots of the villain
+         */
+        public int[] getVillainResults() {
+            return villainResults.clone();
+        }
+
+        /**
+         * Getter for the finished attribute
+         * @return Whether the game is over
+         */
+        public boolean isFinished() {
+            return finished;
+        }
+
+        /**
+         * Getter for the playerWon attribute
+         * @return Whether the player has won
+         */
+        public boolean hasPlayerWon() {
+            return playerWon;
+        }
+    }
+}
@@ -3,12 +3,16 @@ package de.htw.battleship;
 /**
  * An instance of this class holds all information to render and identify
  * a ship on a game board. Additionally, it can be exported as a string.
+ * The position of a ship is the top left corner of its rotated shape, which
+ * is the starting point of a straight ship.
  * @author Michael Draga
  * @version 1.0
  */
 public class Ship extends Vector2d {
     private int shipLength;
     private boolean horizontal;
+    private ShipShape shape;
+    private int rotation;
 
     /**
      * Generate a new ship with given values for x and y
@@ -29,8 +33,7 @@ public class Ship extends Vector2d {
      */
     public Ship(int x, int y, int shipLength, boolean horizontal) {
         super(x, y);
-        this.shipLength = shipLength;
-        this.horizontal = horizontal;
+        set(x, y, ShipShape.line(shipLength), horizontal ? 0 : 1);
     }
 
     /**
@@ -41,23 +44,67 @@ public class Ship extends Vector2d {
      * @param horizontal The orientation of the ship
      */
     public Ship(Vector2d position, int shipLength, boolean horizontal) {
-        super();
-        this.x = position.x;
-        this.y = position.y;
-        this.shipLength = shipLength;
-        this.horizontal = horizontal;
+        this(position.x, position.y, shipLength, horizontal);
     }
 
     /**
-     * Converts a ship into it's string representation (a list of its attributes)
+     * Generate new ship of any shape
+     * @param x The x coordinate of the top left corner
+     * @param y The y coordinate of the top left corner
+     * @param shape The shape of the ship
+     * @param rotation The index of the rotation of the shape
+     */
+    public Ship(int x, int y, ShipShape shape, int rotation) {
+        super(x, y);
+        set(x, y, shape, rotation);
+    }
+
+    /**
+     * Overwrites all attributes, so a Ship object can be reused for a new ship
+     * @param x The x coordinate of the top left corner
+     * @param y The y coordinate of the top left corner
+     * @param shape The shape of the ship
+     * @param rotation The index of the rotation of the shape
+     */
+    void set(int x, int y, ShipShape shape, int rotation) {
+        this.x = x;
+        this.y = y;
+        this.shape = shape;
+        this.rotation = rotation;
+        this.shipLength = shape.getCellCount();
+        ShipShape.Rotation r = shape.getRotation(rotation);
+        this.horizontal = shape.isLine() ? rotation == 0 : r.width >= r.height;
+    }
+
+    /**
+     * Converts a ship into it's string representation (a list of its attributes).
+     * Straight ships keep the format "x,y,length,horizontal", other ships
+     * are saved as "x,y,shape,rotation".
      * @return The string representation of a ship
      */
     public String toString() {
-        return String.format("%d,%d,%d,%b", this.x, this.y, this.shipLength, this.horizontal);
+        if (shape.isLine())
+            return String.format("%d,%d,%d,%b", this.x, this.y, this.shipLength, this.horizontal);
+        return String.format("%d,%d,%s,%d", this.x, this.y, this.shape, this.rotation);
     }
 
     /**
-     * Checks if the ship is horizontal
+     * Parses a ship from its string representation
+     * @param string The string created by toString
+     * @return The parsed ship
+     */
+    public static Ship parse(String string) {
+        String[] attributes = string.split(",");
+        int x = Integer.parseInt(attributes[0]);
+        int y = Integer.parseInt(attributes[1]);
+        if (attributes[2].contains("."))
+            return new Ship(x, y, ShipShape.parse(attributes[2]), Integer.parseInt(attributes[3]));
+        return new Ship(x, y, Integer.parseInt(attributes[2]), Boolean.parseBoolean(attributes[3]));
+    }
+
+    /**
+     * Checks if the ship is horizontal. Ships that are not straight count as
+     * horizontal if they are at least as wide as high.
      * @return Whether the ship is horizontal or not
      */
     public boolean isHorizontal() {
@@ -74,9 +121,53 @@ public class Ship extends Vector2d {
 
     /**
      * Getter for the shipLength attribute
-     * @return The value of the shipLength attribute (the length of the ship)
+     * @return The value of the shipLength attribute (the number of fields of the ship)
      */
     public int getShipLength() {
         return this.shipLength;
     }
+
+    /**
+     * Getter for the shape attribute
+     * @return The shape of the ship
+     */
+    public ShipShape getShape() {
+        return shape;
+    }
+
+    /**
+     * Getter for the rotation attribute
+     * @return The index of the rotation of the shape
+     */
+    public int getRotation() {
+        return rotation;
+    }
+
+    /**
+     * Gets the x coordinate of a field of the ship
+     * @param i The index of the field (0 to getShipLength() - 1)
+     * @return The x coordinate of the field on the board
+     */
+    public int getCellX(int i) {
+        return this.x + shape.getRotation(rotation).cellX[i];
+    }
+
+    /**
+     * Gets the y coordinate of a field of the ship
+     * @param i The index of the field (0 to getShipLength() - 1)
+     * @return The y coordinate of the field on the board
+     */
+    public int getCellY(int i) {
+        return this.y + shape.getRotation(rotation).cellY[i];
+    }
+
+    /**
+     * Checks whether the ship covers a field
+     * @param x The x coordinate of the field
+     * @param y The y coordinate of the field
+     * @return Whether the field is part of the ship
+     */
+    public boolean covers(int x, int y) {
+        return shape.getRotation(rotation).covers(x - this.x, y - this.y);
+    }
 }
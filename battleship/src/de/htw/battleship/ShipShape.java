@@ -0,0 +1,300 @@
+package de.htw.battleship;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * An instance of this class describes the shape of a ship: any polyomino,
+ * i.e. a set of connected fields. A straight ship is a line of fields.
+ * Every rotation of the shape is precompiled into row bit masks of its
+ * fields and of its "no-touch" halo (the fields and all fields around
+ * them), so placing a ship and checking whether it is sunk only take one
+ * mask operation per row.
+ * Shapes are immutable; equal shapes have equal codes, e.g. "0.0/1.0/1.1"
+ * for an L of three fields.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class ShipShape {
+    /**
+     * A shape including its halo has to fit into one long per row
+     */
+    public static final int MAX_WIDTH = 62;
+
+    private static final ShipShape[] lines = new ShipShape[MAX_WIDTH + 1];
+
+    private final boolean line;
+    private final int cellCount;
+    private final String code;
+    private final Rotation[] rotations;
+
+    /**
+     * Constructor of the class
+     * @param cellX The x coordinates of the fields
+     * @param cellY The y coordinates of the fields
+     * @param line Whether the shape is a straight line
+     */
+    private ShipShape(int[] cellX, int[] cellY, boolean line) {
+        this.line = line;
+        this.cellCount = cellX.length;
+        Rotation base = new Rotation(cellX, cellY);
+        this.code = base.code();
+        if (line) {
+            // A line keeps both orientations, even with one field, so it can be saved as before
+            this.rotations = new Rotation[]{base, base.rotate()};
+        } else {
+            ArrayList<Rotation> distinct = new ArrayList<Rotation>();
+            Rotation rotation = base;
+            for (int i = 0; i < 4; i++, rotation = rotation.rotate()) {
+                boolean known = false;
+                for (Rotation other : distinct)
+                    known |= other.code().equals(rotation.code());
+                if (!known)
+                    distinct.add(rotation);
+            }
+            this.rotations = distinct.toArray(new Rotation[0]);
+        }
+        for (Rotation r : rotations) {
+            if (r.width > MAX_WIDTH)
+                throw new IllegalArgumentException("Ship too large: " + code);
+        }
+    }
+
+    /**
+     * Gets the shape of a straight ship. Rotation 0 is horizontal, rotation 1 vertical.
+     * @param length The length of the ship
+     * @return The shape of the ship
+     */
+    public static ShipShape line(int length) {
+        if (length < 1 || length > MAX_WIDTH)
+            throw new IllegalArgumentException("Invalid ship length: " + length);
+        synchronized (lines) {
+            if (lines[length] == null) {
+                int[] cellX = new int[length];
+                for (int i = 0; i < length; i++)
+                    cellX[i] = i;
+                lines[length] = new ShipShape(cellX, new int[length], true);
+            }
+            return lines[length];
+        }
+    }
+
+    /**
+     * Parses a shape from its code ("x.y" per field, separated by "/").
+     * The fields have to be connected.
+     * @param code The code of the shape
+     * @return The shape
+     */
+    public static ShipShape parse(String code) {
+        String[] cells = code.split("/");
+        int[] cellX = new int[cells.length];
+        int[] cellY = new int[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            String[] coordinates = cells[i].split("\\.");
+            cellX[i] = Integer.parseInt(coordinates[0]);
+            cellY[i] = Integer.parseInt(coordinates[1]);
+        }
+        ShipShape shape = new ShipShape(cellX, cellY, false);
+        if (!shape.isConnected())
+            throw new IllegalArgumentException("Fields of the ship are not connected: " + code);
+        // Straight shapes are always the line shapes, so ships of both kinds compare equal
+        Rotation base = shape.rotations[0];
+        if (base.height == 1)
+            return line(base.width);
+        if (base.width == 1)
+            return line(base.height);
+        return shape;
+    }
+
+    /**
+     * Checks whether all fields of the shape are connected by their sides
+     * @return Whether the shape is a polyomino
+     */
+    private boolean isConnected() {
+        Rotation base = rotations[0];
+        boolean[] reached = new boolean[cellCount];
+        reached[0] = true;
+        int nReached = 1;
+        for (boolean changed = true; changed; ) {
+            changed = false;
+            for (int i = 0; i < cellCount; i++) {
+                for (int j = 0; j < cellCount && !reached[i]; j++) {
+                    if (reached[j] && Math.abs(base.cellX[i] - base.cellX[j]) + Math.abs(base.cellY[i] - base.cellY[j]) == 1) {
+                        reached[i] = true;
+                        nReached++;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return nReached == cellCount;
+    }
+
+    /**
+     * Checks whether the shape is a straight line
+     * @return Whether the shape is a straight line
+     */
+    public boolean isLine() {
+        return line;
+    }
+
+    /**
+     * Gets the number of fields of the shape
+     * @return The number of fields
+     */
+    public int getCellCount() {
+        return cellCount;
+    }
+
+    /**
+     * Gets the number of distinct rotations of the shape
+     * @return The number of rotations
+     */
+    public int getRotationCount() {
+        return rotations.length;
+    }
+
+    /**
+     * Gets a precompiled rotation of the shape
+     * @param rotation The index of the rotation
+     * @return The rotation
+     */
+    public Rotation getRotation(int rotation) {
+        return rotations[rotation];
+    }
+
+    /**
+     * Checks if two shapes have the same fields
+     * @param o The other object
+     * @return Whether the other object is a shape with the same fields
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof ShipShape))
+            return false;
+        ShipShape other = (ShipShape) o;
+        return line == other.line && code.equals(other.code);
+    }
+
+    /**
+     * Calculates the hash code based on the fields
+     * @return The hash code of the shape
+     */
+    @Override
+    public int hashCode() {
+        return code.hashCode();
+    }
+
+    /**
+     * Converts the shape into its string representation
+     * @return The code of the shape, e.g. "0.0/1.0/1.1"
+     */
+    public String toString() {
+        return code;
+    }
+
+    /**
+     * One rotation of a shape, moved so its topmost row and leftmost column are 0
+     */
+    public static class Rotation {
+        final int width;
+        final int height;
+        final int[] cellX;
+        final int[] cellY;
+        /**
+         * The fields per row, bit x stands for column x
+         */
+        final long[] rows;
+        /**
+         * The fields and their neighbours per row, starting one row above and
+         * one column left of the shape (height + 2 rows of width + 2 bits)
+         */
+        final long[] haloRows;
+
+        /**
+         * Constructor of the class
+         * @param cellX The x coordinates of the fields
+         * @param cellY The y coordinates of the fields
+         */
+        Rotation(int[] cellX, int[] cellY) {
+            int minX = Arrays.stream(cellX).min().orElse(0);
+            int minY = Arrays.stream(cellY).min().orElse(0);
+            this.cellX = new int[cellX.length];
+            this.cellY = new int[cellY.length];
+            // Sort the fields by row and column, so equal rotations have equal codes
+            Integer[] order = new Integer[cellX.length];
+            for (int i = 0; i < order.length; i++)
+                order[i] = i;
+            Arrays.sort(order, (a, b) -> cellY[a] != cellY[b] ? cellY[a] - cellY[b] : cellX[a] - cellX[b]);
+            for (int i = 0; i < order.length; i++) {
+                this.cellX[i] = cellX[order[i]] - minX;
+                this.cellY[i] = cellY[order[i]] - minY;
+            }
+            this.width = Arrays.stream(this.cellX).max().orElse(0) + 1;
+            this.height = Arrays.stream(this.cellY).max().orElse(0) + 1;
+            this.rows = new long[height];
+            this.haloRows = new long[height + 2];
+            for (int i = 0; i < this.cellX.length; i++) {
+                rows[this.cellY[i]] |= 1L << this.cellX[i];
+                for (int dy = 0; dy < 3; dy++)
+                    haloRows[this.cellY[i] + dy] |= 7L << this.cellX[i];
+            }
+        }
+
+        /**
+         * Rotates the fields by 90 degrees clockwise
+         * @return The rotated fields
+         */
+        Rotation rotate() {
+            int[] x = new int[cellX.length];
+            int[] y = new int[cellY.length];
+            for (int i = 0; i < cellX.length; i++) {
+                x[i] = -cellY[i];
+                y[i] = cellX[i];
+            }
+            return new Rotation(x, y);
+        }
+
+        /**
+         * Builds the code of the fields ("x.y" per field, separated by "/")
+         * @return The code
+         */
+        String code() {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < cellX.length; i++) {
+                if (i > 0)
+                    builder.append('/');
+                builder.append(cellX[i]).append('.').append(cellY[i]);
+            }
+            return builder.toString();
+        }
+
+        /**
+         * Getter for the width attribute
+         * @return The number of columns of the rotation
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * Getter for the height attribute
+         * @return The number of rows of the rotation
+         */
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * Checks whether the rotation covers a field relative to its top left corner
+         * @param dx The column relative to the left column
+         * @param dy The row relative to the top row
+         * @return Whether the field is part of the ship
+         */
+        public boolean covers(int dx, int dy) {
+            return dx >= 0 && dy >= 0 && dx < width && dy < height && (rows[dy] & (1L << dx)) != 0;
+        }
+    }
+}
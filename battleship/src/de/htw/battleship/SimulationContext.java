@@ -0,0 +1,77 @@
+package de.htw.battleship;
+
+import java.util.HashMap;
+
+/**
+ * Holds one set of game objects (two boards and the strategies shooting at
+ * them) per simulation thread. Instead of allocating new boards, ships and
+ * AIs for every game, the objects are reset and reused, so simulations of
+ * millions of games run without garbage. Only ResettableStrategy instances
+ * are reused, any other strategy is created anew for every game.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class SimulationContext {
+    private static final ThreadLocal<SimulationContext> current = new ThreadLocal<SimulationContext>();
+
+    private final BoardConfiguration configuration;
+    private final Board[] boards = new Board[2];
+    private final HashMap<StrategyFactory, ResettableStrategy> firstBoardStrategies = new HashMap<StrategyFactory, ResettableStrategy>();
+    private final HashMap<StrategyFactory, ResettableStrategy> secondBoardStrategies = new HashMap<StrategyFactory, ResettableStrategy>();
+
+    /**
+     * Constructor of the class
+     * @param configuration The size and fleet of the boards
+     */
+    private SimulationContext(BoardConfiguration configuration) {
+        this.configuration = configuration;
+        this.boards[0] = new Board(configuration);
+        this.boards[1] = new Board(configuration);
+    }
+
+    /**
+     * Gets the game objects of the current thread, creating them if the
+     * thread has none yet or used another configuration before
+     * @param configuration The size and fleet of the boards
+     * @return The game objects of the current thread
+     */
+    public static SimulationContext get(BoardConfiguration configuration) {
+        SimulationContext context = current.get();
+        if (context == null || !context.configuration.equals(configuration)) {
+            context = new SimulationContext(configuration);
+            current.set(context);
+        }
+        return context;
+    }
+
+    /**
+     * Resets one of the two boards, so it holds a newly generated fleet
+     * @param index The index of the board (0 or 1)
+     * @return The reset board
+     */
+    public Board newBoard(int index) {
+        boards[index].reset();
+        return boards[index];
+    }
+
+    /**
+     * Gets a strategy shooting at one of the two boards for a new game. A
+     * ResettableStrategy is only created the first time and reset for every
+     * following game, any other strategy is created for every game.
+     * @param index The index of the board being shot at (0 or 1)
+     * @param factory The factory of the strategy
+     * @return The strategy shooting at the board
+     */
+    public Strategy strategy(int index, StrategyFactory factory) {
+        HashMap<StrategyFactory, ResettableStrategy> strategies = index == 0 ? firstBoardStrategies : secondBoardStrategies;
+        ResettableStrategy reusable = strategies.get(factory);
+        if (reusable != null) {
+            reusable.reset();
+            return reusable;
+        }
+        Strategy strategy = factory.create(boards[index]);
+        if (strategy instanceof ResettableStrategy)
+            strategies.put(factory, (ResettableStrategy) strategy);
+        return strategy;
+    }
+}
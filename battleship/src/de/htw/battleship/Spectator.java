@@ -0,0 +1,33 @@
+package de.htw.battleship;
+
+import java.io.IOException;
+
+/**
+ * Receives the frames of a game watched through a SpectatorBroadcaster,
+ * e.g. to write them to a socket or a file. Frames are sent from a
+ * background thread, never from the game thread. A spectator that takes
+ * longer than SpectatorBroadcaster.SEND_TIMEOUT_MILLIS for one frame is
+ * closed and removed.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public interface Spectator {
+    /**
+     * Sends one frame to the spectator
+     * @param frame The frame, a delta frame "D;sequence;side;x;y;result" or
+     *              a snapshot frame "S;sequence" followed by the exported
+     *              player and villain boards on separate lines
+     * @throws IOException If the frame can not be delivered; the spectator
+     * is removed in that case
+     */
+    void send(String frame) throws IOException;
+
+    /**
+     * Releases the spectator, e.g. closes its socket. Called from another
+     * thread while send is blocked for too long, so the blocked send has to
+     * fail (closing a socket does that) and its thread can deliver the
+     * frames of other games again.
+     * @throws IOException If the spectator can not be closed
+     */
+    void close() throws IOException;
+}
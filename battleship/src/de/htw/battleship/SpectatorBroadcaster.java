@@ -0,0 +1,258 @@
+package de.htw.battleship;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An instance of this class lets spectators watch a running game. For every
+ * shot one small delta frame is created and put into a bounded buffer per
+ * spectator; a small shared thread pool delivers the buffers. The game
+ * thread never waits for a spectator: if the buffer of a slow spectator is
+ * full, it is replaced by one snapshot frame of both boards. Spectators that
+ * need too many snapshots before their buffer is delivered completely are
+ * dropped.
+ * A delivery thread sends the frames of one spectator for at most
+ * DELIVERY_SLICE_MILLIS before it moves on to the next one, so slow
+ * spectators share the pool with the fast ones. A watchdog closes every
+ * spectator whose send takes longer than SEND_TIMEOUT_MILLIS (see
+ * Spectator.close), which makes the blocked send fail and frees its thread.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class SpectatorBroadcaster {
+    /**
+     * The number of frames buffered per spectator
+     */
+    public static final int BUFFER_SIZE = 64;
+    /**
+     * The number of snapshots after which a slow spectator is dropped, unless
+     * its buffer has been delivered completely in between
+     */
+    public static final int MAX_SNAPSHOTS = 3;
+    /**
+     * The time a spectator may take to receive one frame before it is closed and dropped
+     */
+    public static final long SEND_TIMEOUT_MILLIS = 1000;
+    /**
+     * The time a delivery thread sends to one spectator before it takes turns with the others
+     */
+    private static final long DELIVERY_SLICE_MILLIS = 10;
+
+    /**
+     * Delivers the frames of all games, so thousands of spectators do not
+     * need thousands of threads. Sending mostly waits for the network, so
+     * the pool has more threads than cores.
+     */
+    private static final ExecutorService delivery = Executors.newFixedThreadPool(
+            Math.max(4, 2 * Runtime.getRuntime().availableProcessors()), runnable -> {
+                Thread thread = new Thread(runnable, "spectator-delivery");
+                thread.setDaemon(true);
+                return thread;
+            });
+    /**
+     * The subscriptions whose frames are being sent right now, of all games
+     */
+    private static final Set<Subscription> sending = ConcurrentHashMap.newKeySet();
+    /**
+     * Closes the spectators whose send takes too long
+     */
+    private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "spectator-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        watchdog.scheduleWithFixedDelay(SpectatorBroadcaster::closeStuckSpectators,
+                SEND_TIMEOUT_MILLIS / 4, SEND_TIMEOUT_MILLIS / 4, TimeUnit.MILLISECONDS);
+    }
+
+    private final Board playerBoard;
+    private final Board villainBoard;
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+    private long sequence = 0;
+
+    /**
+     * Constructor of the class
+     * @param playerBoard The board of the player
+     * @param villainBoard The board of the villain
+     */
+    public SpectatorBroadcaster(Board playerBoard, Board villainBoard) {
+        this.playerBoard = playerBoard;
+        this.villainBoard = villainBoard;
+    }
+
+    /**
+     * Adds a spectator. Its first frame is a snapshot of the current boards.
+     * Must be called on the game thread (or between moves).
+     * @param spectator The new spectator
+     */
+    public void subscribe(Spectator spectator) {
+        Subscription subscription = new Subscription(spectator);
+        subscription.queue.offer(snapshotFrame());
+        subscriptions.add(subscription);
+        schedule(subscription);
+    }
+
+    /**
+     * Removes a spectator. Frames already being delivered may still arrive.
+     * @param spectator The spectator being removed
+     */
+    public void unsubscribe(Spectator spectator) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.spectator == spectator)
+                drop(subscription);
+        }
+    }
+
+    /**
+     * Gets the number of spectators
+     * @return The number of spectators
+     */
+    public int getSpectatorCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Sends the delta frame of a shot to all spectators. Called on the game
+     * thread after the shot has been applied to the board.
+     * @param side The side that fired the shot (Replay.PLAYER or Replay.VILLAIN)
+     * @param shot The position that was shot at
+     * @param result The result code returned from the Board.shoot method
+     */
+    public void publishShot(int side, Vector2d shot, int result) {
+        sequence++;
+        if (subscriptions.isEmpty())
+            return;
+        String frame = "D;" + sequence + ";" + side + ";" + shot.x + ";" + shot.y + ";" + result;
+        String snapshot = null;
+        for (Subscription subscription : subscriptions) {
+            if (!subscription.queue.offer(frame)) {
+                // The spectator is too slow: replace its backlog with the current state
+                if (subscription.snapshots.incrementAndGet() > MAX_SNAPSHOTS) {
+                    drop(subscription);
+                    continue;
+                }
+                if (snapshot == null)
+                    snapshot = snapshotFrame();
+                subscription.queue.clear();
+                subscription.queue.offer(snapshot);
+            }
+            schedule(subscription);
+        }
+    }
+
+    /**
+     * Creates a snapshot frame of both boards
+     * @return The snapshot frame
+     */
+    private String snapshotFrame() {
+        return "S;" + sequence + "\n" + playerBoard.exportAsString() + villainBoard.exportAsString();
+    }
+
+    /**
+     * Makes sure the buffer of a spectator is being delivered
+     * @param subscription The subscription of the spectator
+     */
+    private void schedule(Subscription subscription) {
+        if (subscription.scheduled.compareAndSet(false, true))
+            delivery.execute(() -> deliver(subscription));
+    }
+
+    /**
+     * Sends the buffered frames of a spectator for at most
+     * DELIVERY_SLICE_MILLIS. Once the buffer has been delivered completely,
+     * the spectator has caught up and its snapshots are counted from 0 again.
+     * @param subscription The subscription of the spectator
+     */
+    private void deliver(Subscription subscription) {
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DELIVERY_SLICE_MILLIS);
+        sending.add(subscription);
+        try {
+            String frame;
+            while (subscription.active && System.nanoTime() < end && (frame = subscription.queue.poll()) != null) {
+                subscription.sendingSince = System.nanoTime();
+                subscription.spectator.send(frame);
+                subscription.sendingSince = 0;
+            }
+            if (subscription.queue.isEmpty())
+                subscription.snapshots.set(0);
+        } catch (IOException e) {
+            drop(subscription);
+        } finally {
+            sending.remove(subscription);
+            subscription.sendingSince = 0;
+            subscription.scheduled.set(false);
+        }
+        // A frame might have been added after the loop ended
+        if (!subscription.queue.isEmpty() && subscription.active)
+            schedule(subscription);
+    }
+
+    /**
+     * Closes and drops the spectators of all games whose current send has
+     * taken longer than SEND_TIMEOUT_MILLIS, called by the watchdog
+     */
+    private static void closeStuckSpectators() {
+        long now = System.nanoTime();
+        for (Subscription subscription : sending) {
+            long since = subscription.sendingSince;
+            if (since == 0 || now - since < TimeUnit.MILLISECONDS.toNanos(SEND_TIMEOUT_MILLIS) || !subscription.active)
+                continue;
+            subscription.drop();
+            try {
+                subscription.spectator.close();
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Removes a spectator and stops the delivery of its buffer
+     * @param subscription The subscription of the spectator
+     */
+    private void drop(Subscription subscription) {
+        subscription.active = false;
+        subscription.queue.clear();
+        subscriptions.remove(subscription);
+    }
+
+    /**
+     * The buffer and delivery state of one spectator
+     */
+    private class Subscription {
+        final Spectator spectator;
+        final ArrayBlockingQueue<String> queue = new ArrayBlockingQueue<String>(BUFFER_SIZE);
+        final AtomicBoolean scheduled = new AtomicBoolean(false);
+        volatile boolean active = true;
+        /**
+         * Snapshots that replaced the buffer since it was last delivered completely
+         */
+        final AtomicInteger snapshots = new AtomicInteger();
+        /**
+         * The System.nanoTime() value when the current send started or 0 if none is running
+         */
+        volatile long sendingSince = 0;
+
+        Subscription(Spectator spectator) {
+            this.spectator = spectator;
+        }
+
+        /**
+         * Removes the spectator from its game (see SpectatorBroadcaster.drop)
+         */
+        void drop() {
+            SpectatorBroadcaster.this.drop(this);
+        }
+    }
+}
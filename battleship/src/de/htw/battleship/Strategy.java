@@ -0,0 +1,33 @@
+package de.htw.battleship;
+
+/**
+ * A strategy chooses the shots of one side in a headless game, e.g. in a
+ * Tournament. An instance plays exactly one game against one board, unless
+ * it is a ResettableStrategy.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public interface Strategy {
+    /**
+     * Chooses the next field to shoot at
+     * @return The position to play in the next move
+     */
+    Vector2d nextMove();
+
+    /**
+     * Chooses the next field to shoot at before a deadline. Strategies that
+     * search should return their best answer so far when the deadline is reached.
+     * @param deadline The System.nanoTime() value by which the move must be chosen
+     * @return The position to play in the next move
+     */
+    default Vector2d nextMove(long deadline) {
+        return nextMove();
+    }
+
+    /**
+     * Tells the strategy the result of its last shot
+     * @param shot The position that was shot at
+     * @param result The result code returned from the Board.shoot method
+     */
+    void shotResult(Vector2d shot, int result);
+}
@@ -0,0 +1,24 @@
+package de.htw.battleship;
+
+/**
+ * Creates Strategy instances for headless games. Additional strategies can be
+ * plugged into the Tournament by implementing this interface and listing the
+ * implementation in META-INF/services/de.htw.battleship.StrategyFactory, so
+ * they are found by the java.util.ServiceLoader.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public interface StrategyFactory {
+    /**
+     * Gets the name of the strategy, used in reports
+     * @return The name of the strategy
+     */
+    String getName();
+
+    /**
+     * Creates a new strategy that plays one game
+     * @param opponentBoard The board the strategy shoots at
+     * @return A new strategy
+     */
+    Strategy create(Board opponentBoard);
+}
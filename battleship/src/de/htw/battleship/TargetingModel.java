@@ -0,0 +1,159 @@
+package de.htw.battleship;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An instance of this class counts where a human player shoots, across all
+ * of their games. The counters live in a small file per player that is
+ * mapped into memory, so recording a shot is a single write into the
+ * mapped buffer and the operating system writes it back to the disk.
+ * The file has a fixed size:
+ * <ul>
+ *     <li>magic number and board size (ints)</li>
+ *     <li>number of recorded shots (long)</li>
+ *     <li>one counter per field (ints), row by row</li>
+ * </ul>
+ * The counters can be used to place the villain ships away from the fields
+ * the player likes to shoot at (see Board(BoardConfiguration, int[])).
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class TargetingModel {
+    /**
+     * Below this many recorded shots the model is not used for the placement
+     */
+    public static final int MIN_SHOTS_FOR_BIAS = 100;
+
+    private static final int MAGIC = 0x4253544d;
+    private static final int HEADER_SIZE = 16;
+
+    private final int size;
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Constructor of the class
+     * @param size The width and height of the board
+     * @param buffer The mapped file
+     */
+    private TargetingModel(int size, MappedByteBuffer buffer) {
+        this.size = size;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Gets the path of the model file of a player. Characters that are not
+     * allowed in file names are replaced, the hash code of the name keeps
+     * the files of similar names apart.
+     * @param playerName The name of the player
+     * @return The path of the file in the working directory
+     */
+    public static Path pathOf(String playerName) {
+        String safeName = playerName.replaceAll("[^A-Za-z0-9_-]", "_");
+        return Path.of(String.format("targeting-%s-%08x.model", safeName, playerName.hashCode()));
+    }
+
+    /**
+     * Opens the model of a player, see open(Path, int)
+     * @param playerName The name of the player
+     * @param size The width and height of the board
+     * @return The model of the player
+     * @throws IOException If the file can not be opened or created
+     */
+    public static TargetingModel open(String playerName, int size) throws IOException {
+        return open(pathOf(playerName), size);
+    }
+
+    /**
+     * Opens a model file or creates it if it does not exist. A file for a
+     * different board size is started over.
+     * @param path The path of the file
+     * @param size The width and height of the board
+     * @return The model
+     * @throws IOException If the file can not be opened or created
+     */
+    public static TargetingModel open(Path path, int size) throws IOException {
+        long fileSize = HEADER_SIZE + 4L * size * size;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            boolean valid = channel.size() == fileSize;
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            if (!valid || buffer.getInt(0) != MAGIC || buffer.getInt(4) != size) {
+                for (int i = 0; i < fileSize; i += 4)
+                    buffer.putInt(i, 0);
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, size);
+            }
+            return new TargetingModel(size, buffer);
+        }
+    }
+
+    /**
+     * Counts a shot of the player
+     * @param x The x coordinate of the field
+     * @param y The y coordinate of the field
+     */
+    public synchronized void recordShot(int x, int y) {
+        if (x < 0 || y < 0 || x >= size || y >= size)
+            return;
+        int position = HEADER_SIZE + 4 * (y * size + x);
+        buffer.putInt(position, buffer.getInt(position) + 1);
+        buffer.putLong(8, buffer.getLong(8) + 1);
+    }
+
+    /**
+     * Gets the number of recorded shots
+     * @return The number of shots of all games of the player
+     */
+    public synchronized long getShotCount() {
+        return buffer.getLong(8);
+    }
+
+    /**
+     * Gets the number of recorded shots at a field
+     * @param x The x coordinate of the field
+     * @param y The y coordinate of the field
+     * @return The number of shots at the field
+     */
+    public synchronized int getShots(int x, int y) {
+        return buffer.getInt(HEADER_SIZE + 4 * (y * size + x));
+    }
+
+    /**
+     * Gets a copy of all counters
+     * @return The number of shots per field, row by row (index y * size + x)
+     */
+    public synchronized int[] getHeat() {
+        int[] heat = new int[size * size];
+        for (int i = 0; i < heat.length; i++)
+            heat[i] = buffer.getInt(HEADER_SIZE + 4 * i);
+        return heat;
+    }
+
+    /**
+     * Checks whether enough shots have been recorded to predict the player
+     * @return Whether the model should be used for the placement
+     */
+    public boolean isTrained() {
+        return getShotCount() >= MIN_SHOTS_FOR_BIAS;
+    }
+
+    /**
+     * Getter for the size attribute
+     * @return The width and height of the board
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Writes the counters to the disk now, e.g. when a game is paused or finished
+     */
+    public synchronized void flush() {
+        buffer.force();
+    }
+}
@@ -0,0 +1,272 @@
+package de.htw.battleship;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Places a very large fleet in parallel. The board is split into square
+ * tiles and the ships are spread over the tiles by their area. Every tile
+ * is filled by a fork/join worker that only knows its own fields, so the
+ * workers never wait for each other.
+ * The last column and row of a tile stay empty, so ships of neighbouring
+ * tiles can not touch. A ship placed uniformly on the board would cross a
+ * tile border or lie next to one with a probability of about
+ * (width + height) / TILE_SIZE, that share of the ships is left to the
+ * board, which places them one by one on the whole board afterwards (see
+ * Board.placeFleetTiled). So ships still cover the borders and every ship
+ * is checked against all ships around it.
+ * @author Michael Draga
+ * @version 1.0
+ */
+class TiledPlacement {
+    /**
+     * The width and height of a tile
+     */
+    static final int TILE_SIZE = 128;
+    /**
+     * Fleets with fewer ships are placed one by one, which is fast enough
+     */
+    private static final int MIN_FLEET_SIZE = 2048;
+    /**
+     * The number of tiles a worker fills without splitting its task
+     */
+    private static final int TILES_PER_TASK = 4;
+    private static final int RANDOM_PLACEMENT_ATTEMPTS = 64;
+
+    private final int size;
+    private final ShipShape[] shapes;
+    private final int tilesPerRow;
+    private final int[] tileOf;
+    private final int[] anchors;
+    private final int[] rotations;
+
+    /**
+     * Constructor of the class
+     * @param size The width and height of the board
+     * @param shapes The shapes of the fleet
+     */
+    TiledPlacement(int size, ShipShape[] shapes) {
+        this.size = size;
+        this.shapes = shapes;
+        this.tilesPerRow = (size + TILE_SIZE - 1) / TILE_SIZE;
+        this.tileOf = new int[shapes.length];
+        this.anchors = new int[shapes.length];
+        this.rotations = new int[shapes.length];
+        Arrays.fill(anchors, -1);
+    }
+
+    /**
+     * Checks whether a board is large enough for a tiled placement
+     * @param size The width and height of the board
+     * @param fleetSize The number of ships
+     * @return Whether the board has at least 2 x 2 tiles and a very large fleet
+     */
+    static boolean isWorthwhile(int size, int fleetSize) {
+        return size >= 2 * TILE_SIZE && fleetSize >= MIN_FLEET_SIZE;
+    }
+
+    /**
+     * Spreads the ships over the tiles and fills all tiles in parallel
+     */
+    void place() {
+        int tileCount = tilesPerRow * tilesPerRow;
+        // The usable area of every tile, summed up
+        long[] areaSums = new long[tileCount];
+        long area = 0;
+        for (int tile = 0; tile < tileCount; tile++) {
+            area += (long) usableWidth(tile % tilesPerRow) * usableWidth(tile / tilesPerRow);
+            areaSums[tile] = area;
+        }
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        int[] counts = new int[tileCount + 1];
+        for (int i = 0; i < shapes.length; i++) {
+            ShipShape.Rotation rotation = shapes[i].getRotation(0);
+            if (r.nextDouble() * TILE_SIZE < rotation.width + rotation.height) {
+                tileOf[i] = -1;
+                continue;
+            }
+            int tile = Arrays.binarySearch(areaSums, r.nextLong(area));
+            tileOf[i] = tile < 0 ? -tile - 1 : tile + 1;
+            counts[tileOf[i] + 1]++;
+        }
+        // Sort the ships by tile, the ships of tile t are ships[starts[t]] to ships[starts[t + 1] - 1]
+        int[] starts = new int[tileCount + 1];
+        for (int tile = 0; tile < tileCount; tile++)
+            starts[tile + 1] = starts[tile] + counts[tile + 1];
+        int[] next = Arrays.copyOf(starts, tileCount);
+        int[] ships = new int[starts[tileCount]];
+        for (int i = 0; i < shapes.length; i++) {
+            if (tileOf[i] != -1)
+                ships[next[tileOf[i]]++] = i;
+        }
+        ForkJoinPool.commonPool().invoke(new TileTask(ships, starts, 0, tileCount));
+    }
+
+    /**
+     * Calculates the number of columns (or rows) of a tile that may hold
+     * ships: all but the last one, which keeps the ships of the next tile
+     * away, except for the tiles at the edge of the board
+     * @param column The column (or row) of the tile
+     * @return The number of usable columns (or rows)
+     */
+    private int usableWidth(int column) {
+        int width = Math.min(TILE_SIZE, size - column * TILE_SIZE);
+        return column == tilesPerRow - 1 ? width : width - 1;
+    }
+
+    /**
+     * Fills one tile with its ships. If the random attempts fail, the ship
+     * is placed at one of all legal positions in the tile. Ships that do
+     * not fit into the tile at all are left to the board.
+     * @param tile The index of the tile (row * tilesPerRow + column)
+     * @param ships The indexes of the ships of all tiles, sorted by tile
+     * @param from The index of the first ship of the tile in ships
+     * @param to The index after the last ship of the tile in ships
+     */
+    private void fillTile(int tile, int[] ships, int from, int to) {
+        int left = (tile % tilesPerRow) * TILE_SIZE;
+        int top = (tile / tilesPerRow) * TILE_SIZE;
+        int width = usableWidth(tile % tilesPerRow);
+        int height = usableWidth(tile / tilesPerRow);
+        BitMask shipCells = new BitMask(width * height);
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        for (int s = from; s < to; s++) {
+            int ship = ships[s];
+            ShipShape shape = shapes[ship];
+            int chosen = -1;
+            int chosenRotation = 0;
+            for (int attempt = 0; attempt < RANDOM_PLACEMENT_ATTEMPTS && chosen == -1; attempt++) {
+                int rotation = r.nextInt(shape.getRotationCount());
+                ShipShape.Rotation rotated = shape.getRotation(rotation);
+                if (rotated.width > width || rotated.height > height)
+                    continue;
+                int x = r.nextInt(width - rotated.width + 1);
+                int y = r.nextInt(height - rotated.height + 1);
+                if (Board.fits(shipCells, width, height, rotated, x, y)) {
+                    chosen = y * width + x;
+                    chosenRotation = rotation;
+                }
+            }
+            if (chosen == -1) {
+                // The tile is crowded: choose one of all legal positions (reservoir sampling)
+                int legal = 0;
+                for (int rotation = 0; rotation < shape.getRotationCount(); rotation++) {
+                    ShipShape.Rotation rotated = shape.getRotation(rotation);
+                    for (int y = 0; y + rotated.height <= height; y++) {
+                        for (int x = 0; x + rotated.width <= width; x++) {
+                            if (Board.fits(shipCells, width, height, rotated, x, y) && r.nextInt(++legal) == 0) {
+                                chosen = y * width + x;
+                                chosenRotation = rotation;
+                            }
+                        }
+                    }
+                }
+                if (chosen == -1)
+                    continue;
+            }
+            ShipShape.Rotation rotated = shape.getRotation(chosenRotation);
+            int x = chosen % width;
+            int y = chosen / width;
+            for (int i = 0; i < rotated.cellX.length; i++)
+                shipCells.set((y + rotated.cellY[i]) * width + x + rotated.cellX[i]);
+            // Each ship belongs to one tile, so the workers write different elements
+            anchors[ship] = (top + y) * size + left + x;
+            rotations[ship] = chosenRotation;
+        }
+    }
+
+    /**
+     * Chooses a random position of a rotated shape that covers the empty
+     * last column or row of a tile, for the ships crossing tile borders
+     * @param rotation The rotated shape
+     * @param r The random number generator
+     * @return The index (y * size + x) of the top left corner or -1 if the
+     * shape would not be inside the board
+     */
+    int randomBorderAnchor(ShipShape.Rotation rotation, ThreadLocalRandom r) {
+        int border = r.nextInt(tilesPerRow - 1) * TILE_SIZE + TILE_SIZE - 1;
+        int x;
+        int y;
+        // Wide shapes cross the borders between columns of tiles more often
+        if (r.nextInt(rotation.width + rotation.height) < rotation.width) {
+            x = border - r.nextInt(rotation.width);
+            y = r.nextInt(size - rotation.height + 1);
+        } else {
+            x = r.nextInt(size - rotation.width + 1);
+            y = border - r.nextInt(rotation.height);
+        }
+        if (x < 0 || y < 0 || x + rotation.width > size || y + rotation.height > size)
+            return -1;
+        return y * size + x;
+    }
+
+    /**
+     * Checks whether a ship was left to the board to cross a tile border
+     * @param ship The index of the ship in the fleet
+     * @return Whether the ship was not given to any tile
+     */
+    boolean crossesBorder(int ship) {
+        return tileOf[ship] == -1;
+    }
+
+    /**
+     * Getter for the position of a ship
+     * @param ship The index of the ship in the fleet
+     * @return The index (y * size + x) of the top left corner of the ship
+     * or -1 if the ship is left to the board
+     */
+    int getAnchor(int ship) {
+        return anchors[ship];
+    }
+
+    /**
+     * Getter for the rotation of a ship
+     * @param ship The index of the ship in the fleet
+     * @return The index of the rotation of the shape of the ship
+     */
+    int getRotation(int ship) {
+        return rotations[ship];
+    }
+
+    /**
+     * Fills a range of tiles, split in halves until few tiles are left
+     */
+    private class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] ships;
+        private final int[] starts;
+        private final int fromTile;
+        private final int toTile;
+
+        /**
+         * Constructor of the class
+         * @param ships The indexes of the ships of all tiles, sorted by tile
+         * @param starts The index of the first ship of every tile in ships
+         * @param fromTile The index of the first tile
+         * @param toTile The index after the last tile
+         */
+        TileTask(int[] ships, int[] starts, int fromTile, int toTile) {
+            this.ships = ships;
+            this.starts = starts;
+            this.fromTile = fromTile;
+            this.toTile = toTile;
+        }
+
+        /**
+         * Fills the tiles or splits the range
+         */
+        @Override
+        protected void compute() {
+            if (toTile - fromTile <= TILES_PER_TASK) {
+                for (int tile = fromTile; tile < toTile; tile++)
+                    fillTile(tile, ships, starts[tile], starts[tile + 1]);
+                return;
+            }
+            int middle = (fromTile + toTile) >>> 1;
+            invokeAll(new TileTask(ships, starts, fromTile, middle), new TileTask(ships, starts, middle, toTile));
+        }
+    }
+}
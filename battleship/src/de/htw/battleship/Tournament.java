@@ -0,0 +1,186 @@
+package de.htw.battleship;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays a round-robin tournament between strategies: the AI levels and every
+ * StrategyFactory found by the java.util.ServiceLoader. The games of a
+ * pairing are played in parallel on all cores. Instead of a fixed number of
+ * games, every pairing is stopped by a sequential probability ratio test
+ * (SPRT) as soon as one side is stronger with the requested confidence.
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class Tournament {
+    /**
+     * The AI levels taking part by default. Level 0 can not win and level 4
+     * always wins, so they would only waste time.
+     */
+    private static final int[] DEFAULT_AI_LEVELS = new int[]{1, 2, 3, 5};
+
+    private final List<StrategyFactory> strategies;
+    private final Match match;
+    private final double lowerBound;
+    private final double upperBound;
+    private final double winWeight;
+    private final double lossWeight;
+    private final int maxGames;
+    private final int threads;
+
+    /**
+     * Constructor of the class
+     * @param strategies The strategies taking part
+     * @param configuration The size and fleet of the boards
+     * @param confidence The probability of a correct decision, e.g. 0.95
+     * @param delta The smallest difference of the win rate from 50% that
+     *              should be detected, e.g. 0.05 to distinguish 45% from 55%
+     * @param maxGames The number of games after which an undecided pairing is stopped
+     * @param threads The number of games played in parallel
+     */
+    public Tournament(List<StrategyFactory> strategies, BoardConfiguration configuration,
+                      double confidence, double delta, int maxGames, int threads) {
+        this.strategies = strategies;
+        this.match = new Match(configuration);
+        double error = 1 - confidence;
+        // Wald's bounds for the log likelihood ratio of H1 (p = 0.5 + delta) against H0 (p = 0.5 - delta)
+        this.lowerBound = Math.log(error / (1 - error));
+        this.upperBound = Math.log((1 - error) / error);
+        this.winWeight = Math.log((0.5 + delta) / (0.5 - delta));
+        this.lossWeight = Math.log((0.5 - delta) / (0.5 + delta));
+        this.maxGames = maxGames;
+        this.threads = threads;
+    }
+
+    /**
+     * Starts a tournament from the command line and prints the results.
+     * @param args Optional: the confidence (default 0.95) and the maximum
+     *             number of games per pairing (default 10000)
+     */
+    public static void main(String[] args) {
+        double confidence = args.length > 0 ? Double.parseDouble(args[0]) : 0.95;
+        int maxGames = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+
+        List<StrategyFactory> strategies = new ArrayList<StrategyFactory>();
+        for (int level : DEFAULT_AI_LEVELS)
+            strategies.add(new AIStrategyFactory(level));
+        for (StrategyFactory factory : ServiceLoader.load(StrategyFactory.class))
+            strategies.add(factory);
+
+        Tournament tournament = new Tournament(strategies, BoardConfiguration.DEFAULT, confidence, 0.05,
+                maxGames, Runtime.getRuntime().availableProcessors());
+        for (PairingResult result : tournament.run())
+            System.out.println(result);
+    }
+
+    /**
+     * Plays every pairing of the tournament
+     * @return The results of all pairings
+     */
+    public List<PairingResult> run() {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<PairingResult> results = new ArrayList<PairingResult>();
+        try {
+            for (int i = 0; i < strategies.size(); i++) {
+                for (int j = i + 1; j < strategies.size(); j++)
+                    results.add(playPairing(strategies.get(i), strategies.get(j), executor));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * Plays games between two strategies in parallel batches until the SPRT
+     * reaches a decision or the maximum number of games is reached. Both
+     * strategies start equally often. Draws do not change the test.
+     * @param first The first strategy
+     * @param second The second strategy
+     * @param executor The executor playing the games
+     * @return The result of the pairing
+     */
+    private PairingResult playPairing(StrategyFactory first, StrategyFactory second, ExecutorService executor) {
+        PairingResult result = new PairingResult(first.getName(), second.getName());
+        double llr = 0;
+        while (result.games < maxGames && result.decision == 0) {
+            int batch = Math.min(threads * 4, maxGames - result.games);
+            List<Callable<Integer>> games = new ArrayList<Callable<Integer>>();
+            for (int g = 0; g < batch; g++) {
+                boolean firstStarts = (result.games + g) % 2 == 0;
+                games.add(() -> match.play(first, second, firstStarts));
+            }
+            try {
+                for (Future<Integer> game : executor.invokeAll(games)) {
+                    int outcome = game.get();
+                    result.games++;
+                    if (outcome == Match.FIRST_WON) {
+                        result.wins++;
+                        llr += winWeight;
+                    } else if (outcome == Match.SECOND_WON) {
+                        result.losses++;
+                        llr += lossWeight;
+                    } else {
+                        result.draws++;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Game failed: " + first.getName() + " vs " + second.getName(), e.getCause());
+            }
+            if (llr >= upperBound)
+                result.decision = 1;
+            else if (llr <= lowerBound)
+                result.decision = -1;
+        }
+        return result;
+    }
+
+    /**
+     * Holds the outcome of the games between two strategies.
+     */
+    public static class PairingResult {
+        final String first;
+        final String second;
+        int games = 0;
+        int wins = 0;
+        int losses = 0;
+        int draws = 0;
+        /**
+         * 1 if the first strategy is stronger, -1 if the second one is, 0 if undecided
+         */
+        int decision = 0;
+
+        PairingResult(String first, String second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        /**
+         * Getter for the decision attribute
+         * @return 1 if the first strategy is stronger, -1 if the second one is, 0 if undecided
+         */
+        public int getDecision() {
+            return decision;
+        }
+
+        /**
+         * Converts the result into a line of the tournament report
+         * @return The string representation of the result
+         */
+        public String toString() {
+            String verdict = decision > 0 ? first + " ist stärker" :
+                    decision < 0 ? second + " ist stärker" : "unentschieden";
+            return String.format("%s vs %s: %d Spiele, %d Siege, %d Niederlagen, %d Remis -> %s",
+                    first, second, games, wins, losses, draws, verdict);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package de.htw.battleship;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An instance of this class memoizes results that only depend on the state
+ * of a board, keyed by the Zobrist hash of the board (see Board.getHash).
+ * The table has a fixed number of slots and can be used by several threads
+ * at once. Every hash maps to exactly one slot and a new entry simply
+ * replaces the old one, so the memory used never grows.
+ * @param <V> The type of the memoized results
+ * @author Michael Draga
+ * @version 1.0
+ */
+public class TranspositionTable<V> {
+    private final AtomicReferenceArray<Entry<V>> slots;
+    private final int mask;
+
+    /**
+     * Generate a new empty transposition table
+     * @param capacity The minimal number of slots, rounded up to a power of two
+     */
+    public TranspositionTable(int capacity) {
+        int slotCount = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<Entry<V>>(slotCount);
+        this.mask = slotCount - 1;
+    }
+
+    /**
+     * Looks up the result stored for a hash
+     * @param hash The hash of the board
+     * @return The stored result or null if there is none (or it was evicted)
+     */
+    public V get(long hash) {
+        Entry<V> entry = slots.get(index(hash));
+        return entry != null && entry.hash == hash ? entry.value : null;
+    }
+
+    /**
+     * Stores a result for a hash, evicting the entry that used the same slot
+     * @param hash The hash of the board
+     * @param value The result being stored
+     */
+    public void put(long hash, V value) {
+        slots.set(index(hash), new Entry<V>(hash, value));
+    }
+
+    /**
+     * Removes all entries from the table
+     */
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++)
+            slots.set(i, null);
+    }
+
+    /**
+     * Calculates the slot of a hash. The upper bits are mixed in because
+     * the lower bits of similar boards are not independent.
+     * @param hash The hash of the board
+     * @return The index of the slot
+     */
+    private int index(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * An immutable pair of a hash and its result, so readers never see a
+     * result together with the hash of another board.
+     * @param <V> The type of the result
+     */
+    private static class Entry<V> {
+        final long hash;
+        final V value;
+
+        Entry(long hash, V value) {
+            this.hash = hash;
+            this.value = value;
+        }
+    }
+}